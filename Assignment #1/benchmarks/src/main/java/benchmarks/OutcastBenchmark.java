@@ -0,0 +1,46 @@
+package benchmarks;
+
+import edu.princeton.cs.algs4.In;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Outcast.outcast on the bundled outcast*.txt inputs whose nouns are all in the bundled
+// 10000-synset subgraph, against a WordNet built from it once per trial.
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OutcastBenchmark {
+
+    @Param({ "outcast5a.txt", "outcast8b.txt", "outcast11.txt" })
+    public String input;
+
+    private Object outcast;
+    private String[] nouns;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        Object wordnet = Targets.NEW_WORDNET.invoke(Targets.data("synsets10000-subgraph.txt"),
+                                                    Targets.data("hypernyms10000-subgraph.txt"));
+        outcast = Targets.NEW_OUTCAST.invoke(wordnet);
+        nouns = new In(Targets.data(input)).readAllStrings();
+    }
+
+    @Benchmark
+    public String outcast() throws Throwable {
+        return (String) Targets.OUTCAST_OUTCAST.invoke(outcast, nouns);
+    }
+}
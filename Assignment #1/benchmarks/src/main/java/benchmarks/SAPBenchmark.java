@@ -0,0 +1,95 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// SAP queries over a fixed pseudo-random workload; each invocation answers the next
+// query of the workload, so every mode sees the same pairs in the same order.
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SAPBenchmark {
+
+    private static final int QUERIES = 1 << 12;
+    private static final int SOURCES = 5;
+
+    @Param({ "digraph-wordnet.txt", "digraph25.txt" })
+    public String digraph;
+
+    @Param({ "SEQUENTIAL", "BIDIRECTIONAL", "LABELED", "PRUNED", "TREE" })
+    public String mode;
+
+    private Object sap;
+    private int[] v;
+    private int[] w;
+    private List<List<Integer>> sourcesV;
+    private List<List<Integer>> sourcesW;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        Object G = Targets.digraph(digraph);
+        sap = Targets.NEW_SAP.invoke(G, Targets.mode(mode));
+        int n = (int) Targets.DIGRAPH_V.invoke(G);
+        Random random = new Random(42);
+        v = new int[QUERIES];
+        w = new int[QUERIES];
+        sourcesV = new ArrayList<>(QUERIES);
+        sourcesW = new ArrayList<>(QUERIES);
+        for (int i = 0; i < QUERIES; ++i) {
+            v[i] = random.nextInt(n);
+            w[i] = random.nextInt(n);
+            sourcesV.add(sample(random, n));
+            sourcesW.add(sample(random, n));
+        }
+    }
+
+    private static List<Integer> sample(Random random, int n) {
+        List<Integer> result = new ArrayList<>(SOURCES);
+        for (int i = 0; i < SOURCES; ++i) {
+            result.add(random.nextInt(n));
+        }
+        return result;
+    }
+
+    private int nextQuery() {
+        next = (next + 1) & (QUERIES - 1);
+        return next;
+    }
+
+    @Benchmark
+    public int length() throws Throwable {
+        int i = nextQuery();
+        return (int) Targets.SAP_LENGTH.invoke(sap, v[i], w[i]);
+    }
+
+    @Benchmark
+    public int ancestor() throws Throwable {
+        int i = nextQuery();
+        return (int) Targets.SAP_ANCESTOR.invoke(sap, v[i], w[i]);
+    }
+
+    // SOURCES vertices on each side
+    @Benchmark
+    public int multiSourceLength() throws Throwable {
+        int i = nextQuery();
+        return (int) Targets.SAP_LENGTH_ITERABLE.invoke(sap, (Iterable<?>) sourcesV.get(i), (Iterable<?>) sourcesW.get(i));
+    }
+}
@@ -0,0 +1,68 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// WordNet construction from the synsets/hypernyms subgraph files, parsing included, and
+// distance between random noun pairs of a WordNet built from the same files once per trial.
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WordNetBenchmark {
+
+    private static final int QUERIES = 1 << 12;
+
+    @Param({ "100", "500", "1000", "5000", "10000" })
+    public String size;
+
+    private Object wordnet;
+    private String[] nounsA;
+    private String[] nounsB;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        wordnet = construct();
+        List<String> nouns = new ArrayList<>();
+        for (Object noun : (Iterable<?>) Targets.WORDNET_NOUNS.invoke(wordnet)) {
+            nouns.add((String) noun);
+        }
+        Random random = new Random(42);
+        nounsA = new String[QUERIES];
+        nounsB = new String[QUERIES];
+        for (int i = 0; i < QUERIES; ++i) {
+            nounsA[i] = nouns.get(random.nextInt(nouns.size()));
+            nounsB[i] = nouns.get(random.nextInt(nouns.size()));
+        }
+    }
+
+    @Benchmark
+    public Object construct() throws Throwable {
+        return Targets.NEW_WORDNET.invoke(Targets.data("synsets" + size + "-subgraph.txt"),
+                                          Targets.data("hypernyms" + size + "-subgraph.txt"));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int distance() throws Throwable {
+        next = (next + 1) & (QUERIES - 1);
+        return (int) Targets.WORDNET_DISTANCE.invoke(wordnet, nounsA[next], nounsB[next]);
+    }
+}
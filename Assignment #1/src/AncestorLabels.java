@@ -0,0 +1,103 @@
+import java.util.Arrays;
+
+// Precomputed ancestor sets: for every vertex v, each vertex reachable from v (v included)
+// with its BFS distance, packed as ancestor << 32 | distance and sorted, so a label is one
+// contiguous run of longs ordered by ancestor id. A shortest ancestral path between two
+// labeled vertices is then a merge-join of their labels, with no graph traversal.
+// A vertex whose ancestor set exceeds maxLabel entries gets no label, so memory stays
+// below V * maxLabel pairs; queries touching such a vertex fall back to BFS.
+final class AncestorLabels {
+
+    static final int DEFAULT_MAX_LABEL = 128;
+
+    private final int maxLabel;
+    private final int[] start;
+    private final long[] entries;
+
+    AncestorLabels(CompactDigraph digraph, int maxLabel) {
+        this(digraph, maxLabel, null, null);
+    }
+
+    // labels for digraph, a later version of the one previous was built for: vertices marked
+    // in changed (those whose ancestor sets differ) and new vertices are labeled afresh, the
+    // rest copy their label from previous
+    AncestorLabels(AncestorLabels previous, CompactDigraph digraph, boolean[] changed) {
+        this(digraph, previous.maxLabel, previous, changed);
+    }
+
+    private AncestorLabels(CompactDigraph digraph, int maxLabel, AncestorLabels previous, boolean[] changed) {
+        this.maxLabel = maxLabel;
+        int n = digraph.V();
+        int reused = previous == null ? 0 : previous.start.length - 1;
+        int[] offsets = digraph.offsets();
+        int[] targets = digraph.targets();
+        int[] mark = new int[n];
+        int[] dist = new int[n];
+        int[] queue = new int[maxLabel + 1];
+        start = new int[n + 1];
+        long[] packed = new long[Math.max(16, previous == null ? n : previous.entries.length + 16)];
+        int size = 0;
+        for (int v = 0; v < n; ++v) {
+            if (v < reused && !changed[v]) {
+                int from = previous.start[v];
+                int length = previous.start[v + 1] - from;
+                if (size + length > packed.length) {
+                    packed = Arrays.copyOf(packed, Math.max(2 * packed.length, size + length));
+                }
+                System.arraycopy(previous.entries, from, packed, size, length);
+                size += length;
+                start[v + 1] = size;
+                continue;
+            }
+            // BFS from v, abandoned as soon as it finds more than maxLabel ancestors
+            int stamp = v + 1;
+            mark[v] = stamp;
+            dist[v] = 0;
+            queue[0] = v;
+            int head = 0, tail = 1;
+            while (head < tail && tail <= maxLabel) {
+                int current = queue[head++];
+                for (int e = offsets[current]; e < offsets[current + 1] && tail <= maxLabel; ++e) {
+                    int candidate = targets[e];
+                    if (mark[candidate] != stamp) {
+                        mark[candidate] = stamp;
+                        dist[candidate] = dist[current] + 1;
+                        queue[tail++] = candidate;
+                    }
+                }
+            }
+            if (tail > maxLabel) {
+                start[v + 1] = size;
+                continue;
+            }
+            if (size + tail > packed.length) {
+                packed = Arrays.copyOf(packed, Math.max(2 * packed.length, size + tail));
+            }
+            for (int i = 0; i < tail; ++i) {
+                packed[size + i] = (long) queue[i] << 32 | dist[queue[i]];
+            }
+            Arrays.sort(packed, size, size + tail);
+            size += tail;
+            start[v + 1] = size;
+        }
+        entries = Arrays.copyOf(packed, size);
+    }
+
+    // every labeled vertex has at least itself in its label
+    boolean hasLabel(int v) {
+        return start[v + 1] > start[v];
+    }
+
+    int start(int v) {
+        return start[v];
+    }
+
+    int end(int v) {
+        return start[v + 1];
+    }
+
+    // label entries; ancestor in the high 32 bits, distance in the low 32 bits
+    long[] entries() {
+        return entries;
+    }
+}
@@ -0,0 +1,157 @@
+import edu.princeton.cs.algs4.Digraph;
+import edu.princeton.cs.algs4.In;
+import java.util.Arrays;
+
+// Immutable digraph in compressed sparse row form: the successors of v are
+// targets[offsets[v]] .. targets[offsets[v + 1] - 1]. Two int arrays replace the
+// per-vertex Bag of boxed Integers, so a BFS walks contiguous memory.
+// Successors keep the iteration order of the equivalent algs4 Digraph, which makes
+// SAP tie-breaking identical whichever representation it is built from.
+public final class CompactDigraph {
+
+    private final int[] offsets;
+    private final int[] targets;
+
+    // copies the adjacency lists of G
+    public CompactDigraph(Digraph G) {
+        if (G == null) {
+            throw new IllegalArgumentException();
+        }
+        int n = G.V();
+        offsets = new int[n + 1];
+        for (int v = 0; v < n; ++v) {
+            offsets[v + 1] = offsets[v] + G.outdegree(v);
+        }
+        targets = new int[offsets[n]];
+        for (int v = 0; v < n; ++v) {
+            int e = offsets[v];
+            for (int w : G.adj(v)) {
+                targets[e++] = w;
+            }
+        }
+    }
+
+    // reads a digraph in the algs4 format (V, E, then E pairs v w) without building a Digraph
+    public CompactDigraph(In in) {
+        if (in == null) {
+            throw new IllegalArgumentException();
+        }
+        int n = in.readInt();
+        int m = in.readInt();
+        if (n < 0 || m < 0) {
+            throw new IllegalArgumentException();
+        }
+        int[] from = new int[m];
+        int[] to = new int[m];
+        offsets = new int[n + 1];
+        for (int i = 0; i < m; ++i) {
+            from[i] = in.readInt();
+            to[i] = in.readInt();
+            if (from[i] < 0 || from[i] >= n || to[i] < 0 || to[i] >= n) {
+                throw new IllegalArgumentException();
+            }
+            offsets[from[i] + 1]++;
+        }
+        for (int v = 0; v < n; ++v) {
+            offsets[v + 1] += offsets[v];
+        }
+        // a Bag iterates newest first, so fill each row back to front
+        int[] next = new int[n];
+        for (int v = 0; v < n; ++v) {
+            next[v] = offsets[v + 1];
+        }
+        targets = new int[m];
+        for (int i = 0; i < m; ++i) {
+            targets[--next[from[i]]] = to[i];
+        }
+    }
+
+    // wraps existing arrays without copying; offsets has V + 1 entries, nondecreasing from 0 to targets.length
+    CompactDigraph(int[] offsets, int[] targets) {
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    public int V() {
+        return offsets.length - 1;
+    }
+
+    public int E() {
+        return targets.length;
+    }
+
+    public int outdegree(int v) {
+        validateVertex(v);
+        return offsets[v + 1] - offsets[v];
+    }
+
+    // successors of v, in the same order as Digraph.adj(v)
+    public int[] adj(int v) {
+        validateVertex(v);
+        int[] result = new int[offsets[v + 1] - offsets[v]];
+        System.arraycopy(targets, offsets[v], result, 0, result.length);
+        return result;
+    }
+
+    // the digraph with every edge reversed
+    public CompactDigraph reverse() {
+        int n = V();
+        int[] reverseOffsets = new int[n + 1];
+        for (int target : targets) {
+            reverseOffsets[target + 1]++;
+        }
+        for (int v = 0; v < n; ++v) {
+            reverseOffsets[v + 1] += reverseOffsets[v];
+        }
+        int[] next = Arrays.copyOf(reverseOffsets, n);
+        int[] reverseTargets = new int[targets.length];
+        for (int v = 0; v < n; ++v) {
+            for (int e = offsets[v]; e < offsets[v + 1]; ++e) {
+                reverseTargets[next[targets[e]]++] = v;
+            }
+        }
+        return new CompactDigraph(reverseOffsets, reverseTargets);
+    }
+
+    // a copy with one more vertex, V(), whose only successor is w; this digraph is left unchanged
+    public CompactDigraph withVertex(int w) {
+        validateVertex(w);
+        int[] grownOffsets = Arrays.copyOf(offsets, offsets.length + 1);
+        grownOffsets[offsets.length] = targets.length + 1;
+        int[] grownTargets = Arrays.copyOf(targets, targets.length + 1);
+        grownTargets[targets.length] = w;
+        return new CompactDigraph(grownOffsets, grownTargets);
+    }
+
+    // a copy with the edge v->w added; like Digraph.addEdge, w becomes the first successor of v.
+    // Costs one copy of each array; this digraph is left unchanged
+    public CompactDigraph withEdge(int v, int w) {
+        validateVertex(v);
+        validateVertex(w);
+        int at = offsets[v];
+        int[] grownTargets = new int[targets.length + 1];
+        System.arraycopy(targets, 0, grownTargets, 0, at);
+        grownTargets[at] = w;
+        System.arraycopy(targets, at, grownTargets, at + 1, targets.length - at);
+        int[] grownOffsets = offsets.clone();
+        for (int u = v + 1; u < grownOffsets.length; ++u) {
+            grownOffsets[u]++;
+        }
+        return new CompactDigraph(grownOffsets, grownTargets);
+    }
+
+    private void validateVertex(int v) {
+        if (v < 0 || v >= V()) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    // backing arrays for the BFS hot loop; never modified
+    int[] offsets() {
+        return offsets;
+    }
+
+    int[] targets() {
+        return targets;
+    }
+}
@@ -0,0 +1,159 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// NounIndex on primitive arrays.
+// Synsets live in a String[] indexed by id. Nouns sit in an open-addressing table with
+// linear probing whose slots hold the key's mixed hash and an ordinal, so a probe only
+// touches a String when the hashes match; the synset ids of ordinal i are
+// ids[first[i]] .. ids[first[i + 1] - 1] in one shared int[], in file order.
+final class DenseNounIndex implements NounIndex {
+
+    private final String[] synsets;
+    private String[] keys;
+    private int[] hashes;
+    private int[] ordinals;
+    private int nounCount;
+    private final int[] first;
+    private final int[] ids;
+
+    // synsets[v] is synset v (null if absent); pair i says synset pairIds[i] contains pairNouns[i]
+    DenseNounIndex(String[] synsets, String[] pairNouns, int[] pairIds, int pairs) {
+        this.synsets = synsets;
+        keys = new String[16];
+        hashes = new int[16];
+        ordinals = new int[16];
+        int[] pairOrdinals = new int[pairs];
+        for (int i = 0; i < pairs; ++i) {
+            pairOrdinals[i] = intern(pairNouns[i]);
+        }
+        first = new int[nounCount + 1];
+        for (int i = 0; i < pairs; ++i) {
+            first[pairOrdinals[i] + 1]++;
+        }
+        for (int i = 0; i < nounCount; ++i) {
+            first[i + 1] += first[i];
+        }
+        int[] next = Arrays.copyOf(first, nounCount);
+        ids = new int[pairs];
+        for (int i = 0; i < pairs; ++i) {
+            ids[next[pairOrdinals[i]]++] = pairIds[i];
+        }
+    }
+
+    // String.hashCode of similar nouns differ only in the low bits, which would make
+    // linear probing cluster; a multiplicative mix spreads them over the table
+    private static int hash(String key) {
+        int h = key.hashCode() * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    // ordinal of key, adding it if new
+    private int intern(String key) {
+        int h = hash(key);
+        int mask = keys.length - 1;
+        int slot = h & mask;
+        while (keys[slot] != null) {
+            if (hashes[slot] == h && keys[slot].equals(key)) {
+                return ordinals[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        hashes[slot] = h;
+        ordinals[slot] = nounCount++;
+        if (2 * nounCount > keys.length) {
+            resize();
+        }
+        return nounCount - 1;
+    }
+
+    private void resize() {
+        String[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        int[] oldOrdinals = ordinals;
+        keys = new String[2 * oldKeys.length];
+        hashes = new int[2 * oldKeys.length];
+        ordinals = new int[2 * oldKeys.length];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldKeys[i] != null) {
+                int slot = oldHashes[i] & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                hashes[slot] = oldHashes[i];
+                ordinals[slot] = oldOrdinals[i];
+            }
+        }
+    }
+
+    @Override
+    public int find(String noun) {
+        int h = hash(noun);
+        int mask = keys.length - 1;
+        int slot = h & mask;
+        while (keys[slot] != null) {
+            if (hashes[slot] == h && keys[slot].equals(noun)) {
+                return ordinals[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    @Override
+    public int first(int i) {
+        return first[i];
+    }
+
+    @Override
+    public int[] synsetIds() {
+        return ids;
+    }
+
+    @Override
+    public int nounCount() {
+        return nounCount;
+    }
+
+    @Override
+    public Iterable<String> nouns() {
+        return () -> new Iterator<String>() {
+            private int slot = advance(0);
+
+            private int advance(int from) {
+                while (from < keys.length && keys[from] == null) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return slot < keys.length;
+            }
+
+            @Override
+            public String next() {
+                if (slot == keys.length) {
+                    throw new NoSuchElementException();
+                }
+                String noun = keys[slot];
+                slot = advance(slot + 1);
+                return noun;
+            }
+        };
+    }
+
+    @Override
+    public String synset(int v) {
+        return v < 0 || v >= synsets.length ? null : synsets[v];
+    }
+
+    @Override
+    public int synsetCount() {
+        return synsets.length;
+    }
+}
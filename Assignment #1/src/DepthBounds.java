@@ -0,0 +1,91 @@
+import java.util.Arrays;
+
+// Per-vertex distances to the roots (vertices without successors) that bound how short an
+// ancestral path can still get, for pruning SAP searches.
+// depth[v] is the shortest distance from v to a root and level[v] the longest. Along an
+// edge depth drops by at most one, so v is at least depth[v] - depth[y] edges from any
+// ancestor y; level drops by at least one, so an ancestor k edges above u has
+// depth <= level <= level[u] - k. Together: a search side that reached u after d edges can
+// meet a source s of the other side at a total length no less than
+// d + max(0, depth[s] - level[u]).
+// Vertices that can reach a cycle get depth 0 and an unbounded level, which never prunes.
+final class DepthBounds {
+
+    private static final int UNBOUNDED = Integer.MAX_VALUE / 4;
+
+    private final int[] depth;
+    private final int[] level;
+
+    // Kahn's algorithm from all roots down the reversed edges; any digraph. reverse must be
+    // digraph.reverse()
+    DepthBounds(CompactDigraph digraph, CompactDigraph reverse) {
+        int n = digraph.V();
+        int[] offsets = digraph.offsets();
+        int[] pending = new int[n];
+        int[] order = new int[n];
+        int tail = 0;
+        for (int v = 0; v < n; ++v) {
+            pending[v] = offsets[v + 1] - offsets[v];
+            if (pending[v] == 0) {
+                order[tail++] = v;
+            }
+        }
+        int[] reverseOffsets = reverse.offsets();
+        int[] reverseTargets = reverse.targets();
+        int head = 0;
+        while (head < tail) {
+            int current = order[head++];
+            for (int e = reverseOffsets[current]; e < reverseOffsets[current + 1]; ++e) {
+                if (--pending[reverseTargets[e]] == 0) {
+                    order[tail++] = reverseTargets[e];
+                }
+            }
+        }
+        depth = new int[n];
+        level = new int[n];
+        Arrays.fill(level, UNBOUNDED);
+        fill(digraph, order, tail);
+    }
+
+    // the same bounds from a topological order of the whole digraph, every vertex after all of
+    // its successors, such as the one RootedDAG.check returns
+    DepthBounds(CompactDigraph digraph, int[] order) {
+        depth = new int[digraph.V()];
+        level = new int[digraph.V()];
+        fill(digraph, order, order.length);
+    }
+
+    // depths and levels of order[0, count)
+    private void fill(CompactDigraph digraph, int[] order, int count) {
+        int[] offsets = digraph.offsets();
+        int[] targets = digraph.targets();
+        for (int i = 0; i < count; ++i) {
+            int v = order[i];
+            if (offsets[v + 1] == offsets[v]) {
+                level[v] = 0;
+                continue;
+            }
+            int shortest = Integer.MAX_VALUE;
+            int longest = 0;
+            for (int e = offsets[v]; e < offsets[v + 1]; ++e) {
+                shortest = Math.min(shortest, depth[targets[e]]);
+                longest = Math.max(longest, level[targets[e]]);
+            }
+            depth[v] = shortest + 1;
+            level[v] = longest + 1;
+        }
+    }
+
+    int[] depth() {
+        return depth;
+    }
+
+    int[] level() {
+        return level;
+    }
+
+    // no ancestral path between v and w is shorter than this
+    int lowerBound(int v, int w) {
+        return Math.max(0, Math.max(depth[w] - level[v], depth[v] - level[w]));
+    }
+}
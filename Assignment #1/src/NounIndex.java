@@ -0,0 +1,25 @@
+// Read-only noun dictionary and synset table behind WordNet.
+// Implementations must be safe for concurrent readers.
+interface NounIndex {
+
+    // position of noun in the dictionary, or -1 if it is not a noun
+    int find(String noun);
+
+    // the synsets containing the noun at position i are
+    // synsetIds()[first(i)] .. synsetIds()[first(i + 1) - 1]
+    int first(int i);
+
+    int[] synsetIds();
+
+    // number of nouns; positions run from 0 to nounCount() - 1
+    int nounCount();
+
+    // every noun, each once
+    Iterable<String> nouns();
+
+    // synonyms of synset v (second field of synsets.txt), or null if there is no such synset
+    String synset(int v);
+
+    // one past the largest synset id
+    int synsetCount();
+}
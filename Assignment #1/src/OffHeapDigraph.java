@@ -0,0 +1,177 @@
+import edu.princeton.cs.algs4.In;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Immutable digraph in the same compressed sparse row form as CompactDigraph, but with
+// offsets and targets outside the Java heap: in direct buffers, or in a read-only mapping
+// of a file written by write(), which the page cache can page in and out as it likes.
+// Heap use is a few objects whatever the size of the graph. A buffer holds at most
+// Integer.MAX_VALUE bytes, so V and E are each limited to MAX_INTS.
+//
+// File layout (big-endian ints): magic, version, V, E, int[V + 1] offsets, int[E] targets
+public final class OffHeapDigraph {
+
+    static final int MAX_INTS = Integer.MAX_VALUE / Integer.BYTES - 1;
+
+    private static final int MAGIC = 0x4f484431;
+    private static final int VERSION = 1;
+    private static final int HEADER = 4 * Integer.BYTES;
+
+    private final IntBuffer offsets;
+    private final IntBuffer targets;
+
+    private OffHeapDigraph(IntBuffer offsets, IntBuffer targets) {
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    // a direct buffer of n ints in native byte order, all 0; counts against -XX:MaxDirectMemorySize
+    static IntBuffer allocate(long n) {
+        if (n < 0 || n > MAX_INTS) {
+            throw new IllegalArgumentException("too large for one buffer: " + n + " ints");
+        }
+        return ByteBuffer.allocateDirect((int) n * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    // reads a digraph in the algs4 format (V, E, then E pairs v w); the edge list is staged
+    // off-heap too, so successors keep Digraph's order without any per-edge heap objects
+    public static OffHeapDigraph read(In in) {
+        if (in == null) {
+            throw new IllegalArgumentException();
+        }
+        int n = in.readInt();
+        int m = in.readInt();
+        if (n < 0 || m < 0) {
+            throw new IllegalArgumentException();
+        }
+        IntBuffer from = allocate(m);
+        IntBuffer to = allocate(m);
+        IntBuffer offsets = allocate(n + 1L);
+        for (int i = 0; i < m; ++i) {
+            int v = in.readInt();
+            int w = in.readInt();
+            if (v < 0 || v >= n || w < 0 || w >= n) {
+                throw new IllegalArgumentException();
+            }
+            from.put(i, v);
+            to.put(i, w);
+            offsets.put(v + 1, offsets.get(v + 1) + 1);
+        }
+        for (int v = 0; v < n; ++v) {
+            offsets.put(v + 1, offsets.get(v + 1) + offsets.get(v));
+        }
+        // a Bag iterates newest first, so fill each row back to front, counting down from the
+        // end of the row kept in next
+        IntBuffer next = allocate(n);
+        for (int v = 0; v < n; ++v) {
+            next.put(v, offsets.get(v + 1));
+        }
+        IntBuffer targets = allocate(m);
+        for (int i = 0; i < m; ++i) {
+            int slot = next.get(from.get(i)) - 1;
+            next.put(from.get(i), slot);
+            targets.put(slot, to.get(i));
+        }
+        return new OffHeapDigraph(offsets, targets);
+    }
+
+    // an off-heap copy of G
+    public static OffHeapDigraph copyOf(CompactDigraph G) {
+        if (G == null) {
+            throw new IllegalArgumentException();
+        }
+        IntBuffer offsets = allocate(G.V() + 1L);
+        IntBuffer targets = allocate(G.E());
+        offsets.put(G.offsets()).clear();
+        targets.put(G.targets()).clear();
+        return new OffHeapDigraph(offsets, targets);
+    }
+
+    // maps a file written by write(); nothing is read until a query touches it
+    public static OffHeapDigraph map(String file) {
+        if (file == null) {
+            throw new IllegalArgumentException();
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER || channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("not a digraph file: " + file);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+                throw new IllegalArgumentException("not a digraph file: " + file);
+            }
+            int n = mapped.getInt(8);
+            int m = mapped.getInt(12);
+            if (n < 0 || m < 0 || HEADER + Integer.BYTES * ((long) n + 1 + m) != channel.size()) {
+                throw new IllegalArgumentException("truncated digraph file: " + file);
+            }
+            IntBuffer ints = ((ByteBuffer) mapped.position(HEADER)).slice().asIntBuffer();
+            IntBuffer offsets = ints.duplicate().limit(n + 1).slice();
+            IntBuffer targets = ints.position(n + 1).slice();
+            return new OffHeapDigraph(offsets, targets);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("could not map " + file, e);
+        }
+    }
+
+    public void write(String file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(V());
+            out.writeInt(E());
+            for (int v = 0; v <= V(); ++v) {
+                out.writeInt(offsets.get(v));
+            }
+            for (int e = 0; e < E(); ++e) {
+                out.writeInt(targets.get(e));
+            }
+        }
+    }
+
+    public int V() {
+        return offsets.limit() - 1;
+    }
+
+    public int E() {
+        return targets.limit();
+    }
+
+    public int outdegree(int v) {
+        validateVertex(v);
+        return offsets.get(v + 1) - offsets.get(v);
+    }
+
+    // successors of v, in the same order as Digraph.adj(v)
+    public int[] adj(int v) {
+        validateVertex(v);
+        int[] result = new int[offsets.get(v + 1) - offsets.get(v)];
+        targets.duplicate().position(offsets.get(v)).get(result);
+        return result;
+    }
+
+    private void validateVertex(int v) {
+        if (v < 0 || v >= V()) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    // backing buffers for the BFS loop; read with absolute gets only, never modified
+    IntBuffer offsets() {
+        return offsets;
+    }
+
+    IntBuffer targets() {
+        return targets;
+    }
+}
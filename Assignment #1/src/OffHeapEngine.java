@@ -0,0 +1,161 @@
+import java.nio.IntBuffer;
+
+// BFS state for OffHeapSAP: the same epoch-stamped scratch as SAPEngine, held in direct
+// buffers so it takes no heap. firstBFS and secondBFS are SAPEngine's SEQUENTIAL searches
+// over IntBuffer instead of int[], kept line for line in step so that both return the same
+// ancestor on ties; a change to either copy must be made to the other.
+// An engine is not thread-safe; OffHeapSAP lends one to each query in flight.
+final class OffHeapEngine {
+
+    private final IntBuffer offsets;
+    private final IntBuffer targets;
+    private final IntBuffer distA;
+    private final IntBuffer distB;
+    private final IntBuffer markA;
+    private final IntBuffer markB;
+    private final IntBuffer queueA;
+    private final IntBuffer queueB;
+    private int epochA;
+    private int epochB;
+
+    // result of the last search
+    private int length;
+    private int ancestor;
+
+    // the digraph's buffers are only read with absolute gets, so every engine shares them
+    OffHeapEngine(OffHeapDigraph digraph) {
+        offsets = digraph.offsets();
+        targets = digraph.targets();
+        int n = digraph.V();
+        distA = OffHeapDigraph.allocate(n);
+        distB = OffHeapDigraph.allocate(n);
+        markA = OffHeapDigraph.allocate(n);
+        markB = OffHeapDigraph.allocate(n);
+        queueA = OffHeapDigraph.allocate(n);
+        queueB = OffHeapDigraph.allocate(n);
+    }
+
+    int length() {
+        return length;
+    }
+
+    int ancestor() {
+        return ancestor;
+    }
+
+    // v and w must already be validated
+    void search(int v, int w) {
+        nextEpoch();
+        markA.put(v, epochA);
+        distA.put(v, 0);
+        queueA.put(0, v);
+        markB.put(w, epochB);
+        distB.put(w, 0);
+        queueB.put(0, w);
+        firstBFS(1);
+        secondBFS(1);
+    }
+
+    // v and w must already be validated
+    void search(Iterable<Integer> v, Iterable<Integer> w) {
+        nextEpoch();
+        int tailA = 0;
+        for (int a : v) {
+            if (markA.get(a) != epochA) {
+                markA.put(a, epochA);
+                distA.put(a, 0);
+                queueA.put(tailA++, a);
+            }
+        }
+        int tailB = 0;
+        for (int b : w) {
+            if (markB.get(b) != epochB) {
+                markB.put(b, epochB);
+                distB.put(b, 0);
+                queueB.put(tailB++, b);
+            }
+        }
+        if (tailA == 0 || tailB == 0) {
+            length = -1;
+            ancestor = -1;
+            return;
+        }
+        firstBFS(tailA);
+        secondBFS(tailB);
+    }
+
+    private void nextEpoch() {
+        if (epochA == Integer.MAX_VALUE) {
+            clear(markA);
+            epochA = 0;
+        }
+        epochA++;
+        if (epochB == Integer.MAX_VALUE) {
+            clear(markB);
+            epochB = 0;
+        }
+        epochB++;
+    }
+
+    private static void clear(IntBuffer buffer) {
+        for (int i = 0; i < buffer.limit(); ++i) {
+            buffer.put(i, 0);
+        }
+    }
+
+    // SAPEngine.firstBFS over buffers: BFS from the vertices in queueA[0, tail),
+    // recording every ancestor in distA
+    private void firstBFS(int tail) {
+        int head = 0;
+        while (head < tail) {
+            int current = queueA.get(head++);
+            int step = distA.get(current) + 1;
+            for (int e = offsets.get(current), end = offsets.get(current + 1); e < end; ++e) {
+                int candidate = targets.get(e);
+                if (markA.get(candidate) != epochA) {
+                    markA.put(candidate, epochA);
+                    distA.put(candidate, step);
+                    queueA.put(tail++, candidate);
+                }
+            }
+        }
+    }
+
+    // SAPEngine.secondBFS over buffers: BFS from the vertices in queueB[0, tail), keeping
+    // the first strictly shorter ancestral path found; stops once no deeper level can improve on it
+    private void secondBFS(int tail) {
+        int bestLength = Integer.MAX_VALUE;
+        int bestAncestor = -1;
+        for (int i = 0; i < tail; ++i) {
+            int b = queueB.get(i);
+            if (markA.get(b) == epochA && distA.get(b) < bestLength) {
+                bestLength = distA.get(b);
+                bestAncestor = b;
+            }
+        }
+        int head = 0;
+        while (head < tail) {
+            int current = queueB.get(head);
+            int step = distB.get(current) + 1;
+            if (step >= bestLength) {
+                break;
+            }
+            head++;
+            for (int e = offsets.get(current), end = offsets.get(current + 1); e < end; ++e) {
+                int candidate = targets.get(e);
+                if (markB.get(candidate) == epochB) {
+                    continue;
+                }
+                markB.put(candidate, epochB);
+                distB.put(candidate, step);
+                queueB.put(tail++, candidate);
+                if (markA.get(candidate) == epochA && step + distA.get(candidate) < bestLength) {
+                    bestLength = step + distA.get(candidate);
+                    bestAncestor = candidate;
+                }
+            }
+        }
+        length = bestAncestor == -1 ? -1 : bestLength;
+        ancestor = bestAncestor;
+    }
+}
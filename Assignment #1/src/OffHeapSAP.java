@@ -0,0 +1,142 @@
+import edu.princeton.cs.algs4.In;
+import edu.princeton.cs.algs4.StdIn;
+import edu.princeton.cs.algs4.StdOut;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// SAP for graphs larger than the heap: the digraph is an OffHeapDigraph and the BFS scratch
+// arrays are direct buffers, so heap use does not grow with the graph. Queries run the same
+// searches as SAP in SEQUENTIAL mode over the same successor order, so lengths and
+// ancestors are identical. Each query borrows an OffHeapEngine from a lock-free pool, the
+// way SAP borrows from SAPEnginePool, so queries run concurrently; an engine takes 24 bytes
+// of native memory per vertex and only as many exist as there are queries in flight.
+public class OffHeapSAP {
+
+    private final OffHeapDigraph digraph;
+    private final AtomicReferenceArray<OffHeapEngine> engines;
+
+    // constructor takes an off-heap digraph (not necessarily a DAG), which is shared rather than copied
+    public OffHeapSAP(OffHeapDigraph G) {
+        if (G == null) {
+            throw new IllegalArgumentException();
+        }
+        digraph = G;
+        engines = new AtomicReferenceArray<>(2 * Runtime.getRuntime().availableProcessors());
+        engines.set(0, new OffHeapEngine(G));
+    }
+
+    // number of vertices
+    public int V() {
+        return digraph.V();
+    }
+
+    private void validateVertex(int v) {
+        if (v < 0 || digraph.V() <= v) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    // length of shortest ancestral path between v and w; -1 if no such path
+    public int length(int v, int w) {
+        validateVertex(v);
+        validateVertex(w);
+        OffHeapEngine engine = acquire();
+        try {
+            engine.search(v, w);
+            return engine.length();
+        } finally {
+            release(engine);
+        }
+    }
+
+    // a common ancestor of v and w that participates in a shortest ancestral path; -1 if no such path
+    public int ancestor(int v, int w) {
+        validateVertex(v);
+        validateVertex(w);
+        OffHeapEngine engine = acquire();
+        try {
+            engine.search(v, w);
+            return engine.ancestor();
+        } finally {
+            release(engine);
+        }
+    }
+
+    // length of shortest ancestral path between any vertex in v and any vertex in w; -1 if no such path
+    public int length(Iterable<Integer> v, Iterable<Integer> w) {
+        validateIterable(v);
+        validateIterable(w);
+        OffHeapEngine engine = acquire();
+        try {
+            engine.search(v, w);
+            return engine.length();
+        } finally {
+            release(engine);
+        }
+    }
+
+    // a common ancestor that participates in shortest ancestral path; -1 if no such path
+    public int ancestor(Iterable<Integer> v, Iterable<Integer> w) {
+        validateIterable(v);
+        validateIterable(w);
+        OffHeapEngine engine = acquire();
+        try {
+            engine.search(v, w);
+            return engine.ancestor();
+        } finally {
+            release(engine);
+        }
+    }
+
+    private void validateIterable(Iterable<Integer> it) {
+        if (it == null) {
+            throw new IllegalArgumentException();
+        }
+        for (Integer i : it) {
+            if (i == null) {
+                throw new IllegalArgumentException();
+            }
+            validateVertex(i);
+        }
+    }
+
+    // same slot scan as SAPEnginePool.acquire
+    private OffHeapEngine acquire() {
+        int n = engines.length();
+        int start = (int) (Thread.currentThread().getId() % n);
+        for (int i = 0; i < n; ++i) {
+            int slot = (start + i) % n;
+            OffHeapEngine engine = engines.get(slot);
+            if (engine != null && engines.compareAndSet(slot, engine, null)) {
+                return engine;
+            }
+        }
+        return new OffHeapEngine(digraph);
+    }
+
+    // engines beyond the pool's capacity are dropped, and their buffers freed by the collector
+    private void release(OffHeapEngine engine) {
+        int n = engines.length();
+        int start = (int) (Thread.currentThread().getId() % n);
+        for (int i = 0; i < n; ++i) {
+            int slot = (start + i) % n;
+            if (engines.get(slot) == null && engines.compareAndSet(slot, null, engine)) {
+                return;
+            }
+        }
+    }
+
+    // do unit testing of this class; args[0] is an algs4 digraph file, or a file written by
+    // OffHeapDigraph.write if it ends in .bin
+    public static void main(String[] args) {
+        OffHeapDigraph G = args[0].endsWith(".bin") ? OffHeapDigraph.map(args[0]) : OffHeapDigraph.read(new In(args[0]));
+        OffHeapSAP sap = new OffHeapSAP(G);
+        while (!StdIn.isEmpty()) {
+            int v = StdIn.readInt();
+            int w = StdIn.readInt();
+            int length = sap.length(v, w);
+            int ancestor = sap.ancestor(v, w);
+            StdOut.printf("length = %d, ancestor = %d\n", length, ancestor);
+        }
+    }
+}
@@ -2,6 +2,7 @@ import edu.princeton.cs.algs4.In;
 import edu.princeton.cs.algs4.StdOut;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 public class Outcast {
 
@@ -12,7 +13,9 @@ public class Outcast {
         data = wordnet;
     }
 
-    // given an array of WordNet nouns, return an outcast
+    // given an array of WordNet nouns, return an outcast; words that are not WordNet nouns are
+    // ignored. Each distance is computed once, for i < j, by one parallel batch in which every
+    // noun's synsets are searched from only once.
     public String outcast(String[] nouns) {
         ArrayList<String> validNouns = new ArrayList<>();
         for (String noun : nouns) {
@@ -20,21 +23,121 @@ public class Outcast {
                 validNouns.add(noun);
             }
         }
+        int n = validNouns.size();
+        String[] nounsA = new String[n * (n - 1) / 2];
+        String[] nounsB = new String[nounsA.length];
+        int k = 0;
+        for (int i = 0; i < n; ++i) {
+            for (int j = i + 1; j < n; ++j) {
+                nounsA[k] = validNouns.get(i);
+                nounsB[k] = validNouns.get(j);
+                k++;
+            }
+        }
+        int[] distances = data.distances(nounsA, nounsB);
+        int[] totals = new int[n];
+        k = 0;
+        for (int i = 0; i < n; ++i) {
+            for (int j = i + 1; j < n; ++j) {
+                totals[i] += distances[k];
+                totals[j] += distances[k];
+                k++;
+            }
+        }
+        return farthest(validNouns, totals);
+    }
+
+    // the first noun with the largest positive total, or "" if there is none
+    private static String farthest(ArrayList<String> nouns, int[] totals) {
         int farmost = 0;
         String result = "";
-        for (int i = 0; i < validNouns.size(); ++i) {
-            int distance = 0;
-            for (int j = 0; j < validNouns.size(); ++j) {
-                if (i != j) {
-                    distance += data.distance(validNouns.get(i), validNouns.get(j));
+        for (int i = 0; i < nouns.size(); ++i) {
+            if (totals[i] > farmost) {
+                farmost = totals[i];
+                result = nouns.get(i);
+            }
+        }
+        return result;
+    }
+
+    // an empty evolving noun set scored against this Outcast's WordNet
+    public NounSet nounSet() {
+        return new NounSet();
+    }
+
+    // A multiset of nouns whose outcast is kept up to date as nouns come and go: adding a
+    // noun computes only its distances to the current members, and removing one only
+    // subtracts its stored row. outcast() then answers in linear time, exactly as
+    // Outcast.outcast would for the members in insertion order. Not thread-safe.
+    public final class NounSet {
+
+        private final ArrayList<String> members = new ArrayList<>();
+        // rows.get(i)[j] = distance between members i and j; rows grow with the set
+        private final ArrayList<int[]> rows = new ArrayList<>();
+        private int[] totals = new int[16];
+
+        private NounSet() { }
+
+        // adds noun and returns true, or returns false if it is not a WordNet noun
+        public boolean add(String noun) {
+            if (noun == null) {
+                throw new IllegalArgumentException();
+            }
+            if (!data.isNoun(noun)) {
+                return false;
+            }
+            int n = members.size();
+            String[] nounsA = new String[n];
+            Arrays.fill(nounsA, noun);
+            int[] row = Arrays.copyOf(data.distances(nounsA, members.toArray(new String[0])), n + 1);
+            if (n + 1 > totals.length) {
+                totals = Arrays.copyOf(totals, 2 * totals.length);
+            }
+            for (int j = 0; j < n; ++j) {
+                int[] other = rows.get(j);
+                if (other.length <= n) {
+                    other = Arrays.copyOf(other, 2 * n);
+                    rows.set(j, other);
                 }
+                other[n] = row[j];
+                totals[j] += row[j];
+                totals[n] += row[j];
+            }
+            members.add(noun);
+            rows.add(row);
+            return true;
+        }
+
+        // removes one occurrence of noun and returns true, or returns false if it is not a member
+        public boolean remove(String noun) {
+            int r = members.indexOf(noun);
+            if (r == -1) {
+                return false;
             }
-            if (distance > farmost) {
-                farmost = distance;
-                result = validNouns.get(i);
+            int n = members.size();
+            int[] removed = rows.get(r);
+            for (int j = 0; j < n; ++j) {
+                if (j != r) {
+                    int[] other = rows.get(j);
+                    totals[j] -= removed[j];
+                    System.arraycopy(other, r + 1, other, r, n - r - 1);
+                }
             }
+            System.arraycopy(totals, r + 1, totals, r, n - r - 1);
+            totals[n - 1] = 0;
+            members.remove(r);
+            rows.remove(r);
+            return true;
+        }
+
+        public int size() {
+            return members.size();
+        }
+
+        // the member with the largest sum of distances to the others, or "" if there is none
+        public String outcast() {
+            return farthest(members, totals);
         }
-        return result;
     }
 
     public static void main(String[] args)  {
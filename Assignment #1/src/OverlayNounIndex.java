@@ -0,0 +1,151 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// NounIndex for synsets added after loading: a base index plus the added synsets, with
+// nouns new to the base in a small map after the base positions. Each version is
+// immutable; withSynset copies the synset id table and the (small) overlay but never
+// rebuilds or rehashes the base dictionary.
+final class OverlayNounIndex implements NounIndex {
+
+    private final NounIndex base;
+    private final HashMap<String, Integer> added;
+    private final String[] addedNouns;
+    // synset v >= base.synsetCount() is addedSynsets[v - base.synsetCount()]
+    private final String[] addedSynsets;
+    private final int[] first;
+    private final int[] ids;
+
+    private OverlayNounIndex(NounIndex base, HashMap<String, Integer> added, String[] addedNouns,
+                             String[] addedSynsets, int[] first, int[] ids) {
+        this.base = base;
+        this.added = added;
+        this.addedNouns = addedNouns;
+        this.addedSynsets = addedSynsets;
+        this.first = first;
+        this.ids = ids;
+    }
+
+    // previous plus synset id, whose synonyms are the space-separated nouns of synset;
+    // id must be at least previous.synsetCount()
+    static OverlayNounIndex withSynset(NounIndex previous, int id, String synset) {
+        NounIndex base = previous;
+        HashMap<String, Integer> added = new HashMap<>();
+        String[] addedNouns = new String[0];
+        String[] addedSynsets = new String[0];
+        if (previous instanceof OverlayNounIndex) {
+            OverlayNounIndex overlay = (OverlayNounIndex) previous;
+            base = overlay.base;
+            added = new HashMap<>(overlay.added);
+            addedNouns = overlay.addedNouns;
+            addedSynsets = overlay.addedSynsets;
+        }
+        addedSynsets = Arrays.copyOf(addedSynsets, id - base.synsetCount() + 1);
+        addedSynsets[id - base.synsetCount()] = synset;
+
+        // positions of the synset's nouns, adding those seen for the first time
+        String[] nouns = synset.split(" ");
+        int oldCount = previous.nounCount();
+        int[] positions = new int[nouns.length];
+        int count = 0;
+        for (String noun : nouns) {
+            int position = previous.find(noun);
+            if (position == -1) {
+                Integer seen = added.get(noun);
+                if (seen == null) {
+                    addedNouns = Arrays.copyOf(addedNouns, addedNouns.length + 1);
+                    addedNouns[addedNouns.length - 1] = noun;
+                    position = base.nounCount() + addedNouns.length - 1;
+                    added.put(noun, position);
+                } else {
+                    position = seen;
+                }
+            }
+            positions[count++] = position;
+        }
+        int newCount = base.nounCount() + addedNouns.length;
+
+        // the id table again, with id appended to the range of each of those nouns
+        int[] extra = new int[newCount];
+        for (int i = 0; i < count; ++i) {
+            extra[positions[i]] = 1;
+        }
+        int[] oldIds = previous.synsetIds();
+        int[] first = new int[newCount + 1];
+        int[] ids = new int[oldIds.length + count];
+        for (int i = 0; i < newCount; ++i) {
+            int from = i < oldCount ? previous.first(i) : 0;
+            int to = i < oldCount ? previous.first(i + 1) : 0;
+            System.arraycopy(oldIds, from, ids, first[i], to - from);
+            first[i + 1] = first[i] + to - from;
+            if (extra[i] != 0) {
+                ids[first[i + 1]++] = id;
+            }
+        }
+        return new OverlayNounIndex(base, added, addedNouns, addedSynsets, first, Arrays.copyOf(ids, first[newCount]));
+    }
+
+    @Override
+    public int find(String noun) {
+        int position = base.find(noun);
+        if (position != -1) {
+            return position;
+        }
+        Integer seen = added.get(noun);
+        return seen == null ? -1 : seen;
+    }
+
+    @Override
+    public int first(int i) {
+        return first[i];
+    }
+
+    @Override
+    public int[] synsetIds() {
+        return ids;
+    }
+
+    @Override
+    public int nounCount() {
+        return base.nounCount() + addedNouns.length;
+    }
+
+    @Override
+    public Iterable<String> nouns() {
+        return () -> new Iterator<String>() {
+            private final Iterator<String> fromBase = base.nouns().iterator();
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return fromBase.hasNext() || next < addedNouns.length;
+            }
+
+            @Override
+            public String next() {
+                if (fromBase.hasNext()) {
+                    return fromBase.next();
+                }
+                if (next == addedNouns.length) {
+                    throw new NoSuchElementException();
+                }
+                return addedNouns[next++];
+            }
+        };
+    }
+
+    @Override
+    public String synset(int v) {
+        int offset = v - base.synsetCount();
+        if (offset < 0) {
+            return base.synset(v);
+        }
+        return offset < addedSynsets.length ? addedSynsets[offset] : null;
+    }
+
+    @Override
+    public int synsetCount() {
+        return base.synsetCount() + addedSynsets.length;
+    }
+}
@@ -0,0 +1,185 @@
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+// Bounded map from query keys to results, with LRU or LFU eviction and hit/miss counters.
+// All methods are thread-safe. Lookups never block: they read a ConcurrentHashMap and stamp
+// the entry's last use and use count without a lock, so concurrent hits may lose a count.
+// put, replaceAll and clear take a short exclusive lock; eviction picks the least recently
+// or least often used of SAMPLES entries drawn at random, which is exact while the cache
+// holds no more than SAMPLES entries and close to it beyond.
+public final class QueryCache<K, V> {
+
+    public enum Policy {
+        // evict the entry that was used least recently
+        LRU,
+        // evict the entry that was used least often, oldest first among ties
+        LFU
+    }
+
+    // entries compared per eviction
+    private static final int SAMPLES = 8;
+
+    private static final class Node<K, V> {
+        private final K key;
+        private volatile V value;
+        // System.nanoTime() of the last get or put
+        private volatile long used;
+        private volatile int frequency = 1;
+        // index in slots; guarded by lock
+        private int slot;
+
+        private Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+            used = System.nanoTime();
+        }
+    }
+
+    private final int capacity;
+    private final Policy policy;
+    private final Object lock = new Object();
+    private final ConcurrentHashMap<K, Node<K, V>> map = new ConcurrentHashMap<>();
+    // every node, densely packed for sampling; guarded by lock
+    private final ArrayList<Node<K, V>> slots = new ArrayList<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    // cache holding at most capacity entries
+    public QueryCache(int capacity, Policy policy) {
+        if (capacity <= 0 || policy == null) {
+            throw new IllegalArgumentException();
+        }
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    // cached value for key, or null if absent
+    public V get(K key) {
+        Node<K, V> node = map.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        node.used = System.nanoTime();
+        if (policy == Policy.LFU) {
+            node.frequency++;
+        }
+        hits.increment();
+        return node.value;
+    }
+
+    // stores value for key, evicting one entry if the cache is full; a key already present
+    // keeps its use count
+    public void put(K key, V value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException();
+        }
+        synchronized (lock) {
+            Node<K, V> node = map.get(key);
+            if (node != null) {
+                node.value = value;
+                node.used = System.nanoTime();
+                return;
+            }
+            if (slots.size() == capacity) {
+                evict();
+            }
+            node = new Node<>(key, value);
+            node.slot = slots.size();
+            slots.add(node);
+            map.put(key, node);
+        }
+    }
+
+    private void evict() {
+        int n = slots.size();
+        Node<K, V> victim = null;
+        if (n <= SAMPLES) {
+            for (Node<K, V> node : slots) {
+                victim = worse(victim, node);
+            }
+        } else {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < SAMPLES; ++i) {
+                victim = worse(victim, slots.get(random.nextInt(n)));
+            }
+        }
+        unlink(victim);
+    }
+
+    // the one of a and b (a may be null) to evict first under the policy
+    private Node<K, V> worse(Node<K, V> a, Node<K, V> b) {
+        if (a == null) {
+            return b;
+        }
+        if (policy == Policy.LFU && a.frequency != b.frequency) {
+            return a.frequency < b.frequency ? a : b;
+        }
+        return a.used <= b.used ? a : b;
+    }
+
+    // drops node, moving the last slot into its place; caller holds lock
+    private void unlink(Node<K, V> node) {
+        map.remove(node.key);
+        Node<K, V> last = slots.remove(slots.size() - 1);
+        if (last != node) {
+            last.slot = node.slot;
+            slots.set(node.slot, last);
+        }
+    }
+
+    // replaces each value with function(key, value), or drops the entry if that is null, as one
+    // step with respect to put; a concurrent get sees each entry either before or after it.
+    // Recency and use counts are kept
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        if (function == null) {
+            throw new IllegalArgumentException();
+        }
+        synchronized (lock) {
+            for (int i = slots.size() - 1; i >= 0; --i) {
+                Node<K, V> node = slots.get(i);
+                V value = function.apply(node.key, node.value);
+                if (value == null) {
+                    unlink(node);
+                } else {
+                    node.value = value;
+                }
+            }
+        }
+    }
+
+    // drops every entry; counters are kept
+    public void clear() {
+        synchronized (lock) {
+            map.clear();
+            slots.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (lock) {
+            return slots.size();
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public Policy policy() {
+        return policy;
+    }
+
+    // number of get calls that found a value
+    public long hits() {
+        return hits.sum();
+    }
+
+    // number of get calls that found nothing
+    public long misses() {
+        return misses.sum();
+    }
+}
@@ -0,0 +1,12 @@
+// Receives one callback per SAP or WordNet query, on the calling thread, once the
+// query has finished. A SAP or WordNet built without a listener never reads the clock
+// or computes any of these figures. Batch queries are not reported.
+public interface QueryListener {
+
+    // nanos: wall-clock time of the query; verticesDequeued and edgesRelaxed: BFS work
+    // (0 when answered from labels or a cache); pairs: source/target vertex pairs the
+    // search covered, e.g. |synsets(nounA)| * |synsets(nounB)| for WordNet.distance, and 0
+    // for a cache hit, which searches nothing;
+    // cacheHit: answered from a QueryCache without searching
+    void queryCompleted(long nanos, int verticesDequeued, long edgesRelaxed, long pairs, boolean cacheHit);
+}
@@ -0,0 +1,127 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// QueryListener that aggregates totals and a latency histogram with power-of-two buckets.
+// Thread-safe and lock-free; register() publishes it as a JMX MBean.
+public final class QueryMetrics implements QueryListener, QueryMetricsMBean {
+
+    private static final int BUCKETS = 64;
+
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder verticesDequeued = new LongAdder();
+    private final LongAdder edgesRelaxed = new LongAdder();
+    private final LongAdder pairsTried = new LongAdder();
+    private final AtomicLongArray latency = new AtomicLongArray(BUCKETS);
+
+    @Override
+    public void queryCompleted(long nanos, int dequeued, long edges, long pairs, boolean cacheHit) {
+        queries.increment();
+        if (cacheHit) {
+            cacheHits.increment();
+        }
+        verticesDequeued.add(dequeued);
+        edgesRelaxed.add(edges);
+        pairsTried.add(pairs);
+        latency.incrementAndGet(BUCKETS - 1 - Long.numberOfLeadingZeros(Math.max(1, nanos)));
+    }
+
+    // registers this object with the platform MBean server as WordNet:type=QueryMetrics,name=<name>
+    public void register(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException();
+        }
+        try {
+            ObjectName objectName = new ObjectName("WordNet:type=QueryMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (JMException e) {
+            throw new IllegalArgumentException("could not register " + name, e);
+        }
+    }
+
+    @Override
+    public long getQueries() {
+        return queries.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getVerticesDequeued() {
+        return verticesDequeued.sum();
+    }
+
+    @Override
+    public long getEdgesRelaxed() {
+        return edgesRelaxed.sum();
+    }
+
+    @Override
+    public long getPairsTried() {
+        return pairsTried.sum();
+    }
+
+    @Override
+    public long getLatencyP50Nanos() {
+        return latencyPercentile(0.5);
+    }
+
+    @Override
+    public long getLatencyP99Nanos() {
+        return latencyPercentile(0.99);
+    }
+
+    @Override
+    public long getLatencyP999Nanos() {
+        return latencyPercentile(0.999);
+    }
+
+    @Override
+    public long[] getLatencyHistogram() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; ++i) {
+            counts[i] = latency.get(i);
+        }
+        return counts;
+    }
+
+    // upper bound of the bucket holding the p-quantile latency (0 < p <= 1); 0 if nothing was recorded
+    public long latencyPercentile(double p) {
+        if (!(p > 0 && p <= 1)) {
+            throw new IllegalArgumentException();
+        }
+        long[] counts = getLatencyHistogram();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        long rank = (long) Math.ceil(p * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                return i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+            }
+        }
+        return 0;
+    }
+
+    // counters are not reset atomically with respect to concurrent queries
+    @Override
+    public void reset() {
+        queries.reset();
+        cacheHits.reset();
+        verticesDequeued.reset();
+        edgesRelaxed.reset();
+        pairsTried.reset();
+        for (int i = 0; i < BUCKETS; ++i) {
+            latency.set(i, 0);
+        }
+    }
+}
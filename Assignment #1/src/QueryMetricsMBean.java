@@ -0,0 +1,25 @@
+// JMX view of a QueryMetrics.
+public interface QueryMetricsMBean {
+
+    long getQueries();
+
+    long getCacheHits();
+
+    long getVerticesDequeued();
+
+    long getEdgesRelaxed();
+
+    long getPairsTried();
+
+    // upper bounds of the latency buckets holding the 50th, 99th and 99.9th percentiles
+    long getLatencyP50Nanos();
+
+    long getLatencyP99Nanos();
+
+    long getLatencyP999Nanos();
+
+    // query counts per latency bucket; bucket i holds latencies in [2^i, 2^(i + 1)) ns
+    long[] getLatencyHistogram();
+
+    void reset();
+}
@@ -0,0 +1,80 @@
+/******************************************************************************
+ *  Compilation:  javac QueryThroughput.java
+ *  Execution:    java QueryThroughput synsets.txt hypernyms.txt [queries]
+ *  Dependencies: WordNet.java SAP.java
+ *
+ *  Load one WordNet and split the same random distance/sap workload across
+ *  1, 2, 4, ... threads up to the number of available cores. Print the query
+ *  rate for each thread count; the checksum must be the same on every line.
+ *
+ ******************************************************************************/
+
+import edu.princeton.cs.algs4.StdOut;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class QueryThroughput {
+
+    // noun pairs are pairs[2i], pairs[2i + 1]; each thread takes a contiguous share
+    private static long run(WordNet wordnet, String[] pairs, int threads) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            int n = pairs.length / 2;
+            List<Future<Long>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int lo = (int) ((long) n * t / threads);
+                final int hi = (int) ((long) n * (t + 1) / threads);
+                results.add(pool.submit(() -> {
+                    long checksum = 0;
+                    for (int i = lo; i < hi; i++) {
+                        checksum += wordnet.distance(pairs[2 * i], pairs[2 * i + 1]);
+                        checksum += wordnet.sap(pairs[2 * i], pairs[2 * i + 1]).length();
+                    }
+                    return checksum;
+                }));
+            }
+            long checksum = 0;
+            for (Future<Long> result : results) {
+                checksum += result.get();
+            }
+            return checksum;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            StdOut.println("Usage:\njava QueryThroughput [synsets] [hypernyms] [queries]");
+            return;
+        }
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 200000;
+        WordNet wordnet = new WordNet(args[0], args[1]);
+        List<String> nouns = new ArrayList<>();
+        for (String noun : wordnet.nouns()) {
+            nouns.add(noun);
+        }
+        Random random = new Random(42);
+        String[] pairs = new String[2 * queries];
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = nouns.get(random.nextInt(nouns.size()));
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        // warm up the JIT before measuring
+        run(wordnet, pairs, cores);
+        for (int threads = 1; ; threads = Math.min(2 * threads, cores)) {
+            long start = System.nanoTime();
+            long checksum = run(wordnet, pairs, threads);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            StdOut.printf("%3d threads: %10.0f queries/s  (checksum %d)\n", threads, queries / seconds, checksum);
+            if (threads == cores) {
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+// Checks that a hypernym graph is a rooted DAG: acyclic, with exactly one vertex (the root)
+// that has no hypernym. Kahn's algorithm run from the root down the reversed edges, on
+// int arrays only, so it needs linear time and no recursion on graphs of any depth.
+// The topological order it produces is handed on, so the depth bounds for the loaded graph
+// come from one more pass over it rather than a second Kahn run. Versions made by
+// addSynset/addHypernym have no order of their own, so their bounds run Kahn from scratch.
+final class RootedDAG {
+
+    private RootedDAG() { }
+
+    // every vertex, each after all of its hypernyms, the root first; throws
+    // IllegalArgumentException naming the problem if digraph is not a rooted DAG
+    static int[] check(CompactDigraph digraph) {
+        int n = digraph.V();
+        int[] offsets = digraph.offsets();
+        int root = -1;
+        int roots = 0;
+        for (int v = 0; v < n; ++v) {
+            if (offsets[v + 1] == offsets[v]) {
+                root = v;
+                roots++;
+            }
+        }
+        if (roots == 0) {
+            throw new IllegalArgumentException("hypernym graph has a cycle and no root");
+        }
+        if (roots > 1) {
+            throw new IllegalArgumentException("hypernym graph has " + roots + " roots");
+        }
+
+        // a vertex is ready once all of its hypernyms have been placed
+        CompactDigraph reverse = digraph.reverse();
+        int[] reverseOffsets = reverse.offsets();
+        int[] reverseTargets = reverse.targets();
+        int[] pending = new int[n];
+        for (int v = 0; v < n; ++v) {
+            pending[v] = offsets[v + 1] - offsets[v];
+        }
+        int[] order = new int[n];
+        order[0] = root;
+        int head = 0, tail = 1;
+        while (head < tail) {
+            int current = order[head++];
+            for (int e = reverseOffsets[current]; e < reverseOffsets[current + 1]; ++e) {
+                if (--pending[reverseTargets[e]] == 0) {
+                    order[tail++] = reverseTargets[e];
+                }
+            }
+        }
+        if (tail < n) {
+            throw new IllegalArgumentException("hypernym graph has a cycle (" + (n - tail) + " synsets on or below it)");
+        }
+        return order;
+    }
+}
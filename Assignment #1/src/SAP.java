@@ -2,95 +2,205 @@ import edu.princeton.cs.algs4.Digraph;
 import edu.princeton.cs.algs4.In;
 import edu.princeton.cs.algs4.StdIn;
 import edu.princeton.cs.algs4.StdOut;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Queue;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Immutable and thread-safe: queries borrow BFS scratch state from a pool, so one SAP
+// can serve any number of concurrent callers.
 public class SAP {
 
-    private final Digraph digraph;
+    // how a query searches the graph
+    public enum Mode {
+        // full BFS from the first argument, then a BFS from the second one
+        SEQUENTIAL,
+        // alternating BFS levels from both arguments, stopping once no level can improve
+        BIDIRECTIONAL,
+        // merge-join of ancestor labels precomputed in the constructor; vertices with more
+        // than AncestorLabels.DEFAULT_MAX_LABEL ancestors fall back to BIDIRECTIONAL
+        LABELED,
+        // BIDIRECTIONAL, skipping vertices that DepthBounds, precomputed in the constructor,
+        // shows cannot lie on a path shorter than the best one found so far
+        PRUNED,
+        // lowest common ancestor lookups in the TreeIndex built in the constructor when every
+        // source has a single chain of ancestors; other queries fall back to BIDIRECTIONAL
+        TREE
+    }
+
+    // length and common ancestor of one shortest ancestral path; both -1 if no such path
+    public static final class Result {
+        private final int length;
+        private final int ancestor;
+        // version of the graph this result was cached for
+        private final long version;
+
+        private Result(int length, int ancestor) {
+            this(length, ancestor, 0);
+        }
+
+        private Result(int length, int ancestor, long version) {
+            this.length = length;
+            this.ancestor = ancestor;
+            this.version = version;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public int ancestor() {
+            return ancestor;
+        }
+    }
+
+    private static final Result NO_PATH = new Result(-1, -1);
+
+    // source of graph versions; SAPs built from a caller's digraph are all version 0
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private final CompactDigraph digraph;
+    private final Mode mode;
+    private final AncestorLabels labels;
+    private final SAPEnginePool engines;
+    private final QueryCache<Long, Result> cache;
+    private final QueryListener listener;
+    // hyponym-direction edges for one-to-many queries, descendants, depth bounds and the tree
+    // index, built on first use
+    private volatile CompactDigraph reverse;
+    // computed in the constructor in PRUNED mode, otherwise on the first bounded query
+    private volatile DepthBounds bounds;
+    // topological order that the caller already had, used for the bounds and then dropped
+    private int[] order;
+    // cached results are only read back by SAPs over the same version of the graph
+    private final long version;
+    // set once withEdge has handed the cache to a newer version; queries then skip the cache
+    private volatile boolean retired;
 
     // constructor takes a digraph (not necessarily a DAG)
     public SAP(Digraph G) {
-        if (G == null) {
+        this(G, Mode.SEQUENTIAL);
+    }
+
+    // constructor takes a digraph and the search mode used by every query;
+    // modes agree on lengths but may pick different ancestors when several tie
+    public SAP(Digraph G, Mode mode) {
+        this(G, mode, null);
+    }
+
+    // constructor takes a digraph, the search mode and an optional cache (may be null) for
+    // single-pair queries, keyed on the unordered pair min(v, w) << 32 | max(v, w); the graph
+    // is copied, so cached results never go stale and the cache may be shared between SAPs
+    // built from the same digraph. With a cache both (v, w) and (w, v) search (min, max), so
+    // where ancestors tie the answer is that of the uncached query on (min, max)
+    public SAP(Digraph G, Mode mode, QueryCache<Long, Result> cache) {
+        this(G == null ? null : new CompactDigraph(G), mode, cache);
+    }
+
+    // same as above for a digraph already in compact form, which is shared rather than copied
+    public SAP(CompactDigraph G, Mode mode, QueryCache<Long, Result> cache) {
+        this(G, mode, cache, null);
+    }
+
+    // same as above, reporting every single-pair and multi-source query to listener (may be null)
+    public SAP(CompactDigraph G, Mode mode, QueryCache<Long, Result> cache, QueryListener listener) {
+        this(G, mode, cache, listener, null);
+    }
+
+    // same as above, with order (may be null) listing every vertex after all of its successors,
+    // such as RootedDAG.check returns, so the depth bounds need no traversal of their own
+    SAP(CompactDigraph G, Mode mode, QueryCache<Long, Result> cache, QueryListener listener, int[] order) {
+        this(G, mode, cache, listener, G != null && mode == Mode.LABELED
+                ? new AncestorLabels(G, AncestorLabels.DEFAULT_MAX_LABEL) : null, 0, order);
+    }
+
+    private SAP(CompactDigraph G, Mode mode, QueryCache<Long, Result> cache, QueryListener listener,
+                AncestorLabels labels, long version, int[] order) {
+        if (G == null || mode == null) {
             throw new IllegalArgumentException();
         }
-        digraph = new Digraph(G);
-    }
-
-    private void firstBFS(int a, HashMap<Integer, Integer> ancestorA) {
-        Queue<Integer[]> queue = new LinkedList<>();
-        queue.add(new Integer[]{a, 0});
-        ancestorA.put(a, 0);
-        while (!queue.isEmpty()) {
-            Integer[] current = queue.poll();
-            for (int candidate : digraph.adj(current[0])) {
-                int step = current[1] + 1;
-                if (ancestorA.containsKey(candidate)) {
-                    if (ancestorA.get(candidate) > step) {
-                        ancestorA.put(candidate, step);
-                    }
-                    continue;
-                }
-                ancestorA.put(candidate, step);
-                queue.add(new Integer[]{candidate, step});
-            }
+        digraph = G;
+        this.mode = mode;
+        this.labels = labels;
+        this.order = order;
+        if (mode == Mode.PRUNED) {
+            bounds = newBounds();
         }
+        TreeIndex tree = mode == Mode.TREE ? new TreeIndex(digraph, reverse()) : null;
+        engines = new SAPEnginePool(digraph, mode, labels, bounds, tree);
+        this.cache = cache;
+        this.listener = listener;
+        this.version = version;
     }
 
-    // return {vertexId, distance}
-    private int[] secondBFS(int b, HashMap<Integer, Integer> ancestorA, HashMap<Integer, Integer> visited) {
-        Queue<Integer[]> queue = new LinkedList<>();
-        queue.add(new Integer[]{b, 0});
-        int[] res = new int[]{-1, Integer.MAX_VALUE};
-        if (ancestorA.containsKey(b)) {
-            res[0] = b;
-            res[1] = ancestorA.get(b);
-        }
-        while (!queue.isEmpty()) {
-            Integer[] current = queue.poll();
-            for (int candidate : digraph.adj(current[0])) {
-                if (visited.containsKey(candidate)) {
-                    if (visited.get(candidate) > current[1] + 1) {
-                        visited.put(candidate, current[1] + 1);
-                    } else {
-                        continue;
-                    }
-                }
-                if (ancestorA.containsKey(candidate)) {
-                    int distance = current[1] + 1 + ancestorA.get(candidate);
-                    if (distance < res[1]) {
-                        res[0] = candidate;
-                        res[1] = distance;
-                    }
-                }
-                visited.put(candidate, current[1] + 1);
-                queue.add(new Integer[]{candidate, current[1] + 1});
-            }
-        }
-        if (res[0] == -1) {
-            res[1] = -1;
+    // number of vertices
+    public int V() {
+        return digraph.V();
+    }
+
+    CompactDigraph digraph() {
+        return digraph;
+    }
+
+    // a SAP over this digraph plus one new vertex, V(), whose only successor is w, built in one
+    // step with a new graph version. No old vertex gains an ancestor, so labels are reused, only
+    // the new vertex is labeled, and every cached pair carries over; otherwise as withEdge.
+    public SAP withVertex(int w) {
+        return grow(digraph.withVertex(w), new boolean[digraph.V()]);
+    }
+
+    // a SAP over this digraph plus the edge v->w, with a new graph version. Only the ancestor
+    // sets of v and of the vertices that reach v change, so only their labels are rebuilt and
+    // only cached pairs touching them are dropped; the others carry over to the new version.
+    // The cache and listener are shared. Depth bounds and the tree index, where the mode has
+    // them, are rebuilt whole. This SAP keeps answering for the old digraph, but no longer
+    // uses the shared cache, and results it had put there late are never read by the new SAP.
+    public SAP withEdge(int v, int w) {
+        validateVertex(v);
+        validateVertex(w);
+        CompactDigraph grown = digraph.withEdge(v, w);
+        boolean[] changed = null;
+        if (labels != null || cache != null) {
+            changed = descendants(v);
         }
-        return res;
+        return grow(grown, changed);
     }
 
-    // return {sapIdx, distance(a, b, sap)}
-    private int[] singleSAPHelper(int a, int b) {
-        for (int candidate : digraph.adj(a)) {
-            if (candidate == b) {
-                return new int[]{b, 1};
-            }
+    // a SAP over grown, a later version of this digraph in which the old vertices marked in
+    // changed, and only those, have new ancestors
+    private SAP grow(CompactDigraph grown, boolean[] changed) {
+        AncestorLabels grownLabels = null;
+        if (labels != null) {
+            grownLabels = new AncestorLabels(labels, grown, changed);
+        }
+        SAP next = new SAP(grown, mode, cache, listener, grownLabels, VERSIONS.incrementAndGet(), null);
+        if (cache != null) {
+            retired = true;
+            cache.replaceAll((key, result) -> result.version != version ? result
+                    : changed[(int) (key >>> 32)] || changed[(int) (long) key] ? null : next.stamp(result));
         }
-        for (int candidate : digraph.adj(b)) {
-            if (candidate == a) {
-                return new int[]{a, 1};
+        return next;
+    }
+
+    // marks v and every vertex with a path to v
+    boolean[] descendants(int v) {
+        CompactDigraph r = reverse();
+        int[] offsets = r.offsets();
+        int[] targets = r.targets();
+        boolean[] marked = new boolean[digraph.V()];
+        int[] queue = new int[digraph.V()];
+        marked[v] = true;
+        queue[0] = v;
+        int head = 0, tail = 1;
+        while (head < tail) {
+            int current = queue[head++];
+            for (int e = offsets[current]; e < offsets[current + 1]; ++e) {
+                if (!marked[targets[e]]) {
+                    marked[targets[e]] = true;
+                    queue[tail++] = targets[e];
+                }
             }
         }
-        HashMap<Integer, Integer> ancestorA = new HashMap<>();
-        HashMap<Integer, Integer> visited = new HashMap<>();
-        firstBFS(a, ancestorA);
-        int[] res = secondBFS(b, ancestorA, visited);
-        return res;
+        return marked;
     }
 
     private void validateVertex(int v) {
@@ -103,40 +213,176 @@ public class SAP {
     public int length(int v, int w) {
         validateVertex(v);
         validateVertex(w);
-        if (v == w) {
-            return 0;
+        if (cache != null) {
+            return cachedQuery(v, w).length();
+        }
+        SAPEngine engine = engines.acquire();
+        try {
+            search(engine, v, w);
+            return engine.length();
+        } finally {
+            engines.release(engine);
+        }
+    }
+
+    // length of shortest ancestral path between v and w if it is at most maxDistance; -1 otherwise.
+    // Pairs that the depth bounds alone rule out answer without a search; the rest search only
+    // as far as maxDistance. Not cached
+    public int length(int v, int w, int maxDistance) {
+        validateVertex(v);
+        validateVertex(w);
+        if (maxDistance < 0) {
+            throw new IllegalArgumentException();
+        }
+        DepthBounds b = bounds();
+        if (b.lowerBound(v, w) > maxDistance) {
+            return -1;
+        }
+        return length(new int[] { v }, 0, 1, new int[] { w }, 0, 1, maxDistance, b);
+    }
+
+    // bounded query over v[vFrom, vTo) and w[wFrom, wTo), both non-empty ranges of valid
+    // vertices, pruned with b (may be null)
+    int length(int[] v, int vFrom, int vTo, int[] w, int wFrom, int wTo, int maxDistance, DepthBounds b) {
+        SAPEngine engine = engines.acquire();
+        try {
+            if (listener == null) {
+                engine.searchBounded(v, vFrom, vTo, w, wFrom, wTo, maxDistance, b);
+            } else {
+                long start = System.nanoTime();
+                engine.searchBounded(v, vFrom, vTo, w, wFrom, wTo, maxDistance, b);
+                report(engine, start, (long) (vTo - vFrom) * (wTo - wFrom));
+            }
+            return engine.length();
+        } finally {
+            engines.release(engine);
+        }
+    }
+
+    // depth bounds of this digraph, built once on first use; also for WordNet's bounded queries
+    DepthBounds bounds() {
+        DepthBounds b = bounds;
+        if (b == null) {
+            synchronized (this) {
+                b = bounds;
+                if (b == null) {
+                    b = newBounds();
+                    bounds = b;
+                }
+            }
+        }
+        return b;
+    }
+
+    private DepthBounds newBounds() {
+        if (order == null) {
+            return new DepthBounds(digraph, reverse());
         }
-        return singleSAPHelper(v, w)[1];
+        DepthBounds b = new DepthBounds(digraph, order);
+        order = null;
+        return b;
     }
 
     // a common ancestor of v and w that participates in a shortest ancestral path; -1 if no such path
     public int ancestor(int v, int w) {
         validateVertex(v);
         validateVertex(w);
-        if (v == w) {
-            return v;
+        if (cache != null) {
+            return cachedQuery(v, w).ancestor();
+        }
+        SAPEngine engine = engines.acquire();
+        try {
+            search(engine, v, w);
+            return engine.ancestor();
+        } finally {
+            engines.release(engine);
         }
-        return singleSAPHelper(v, w)[0];
     }
 
-    // return {sapIdx, distance(a, b, sap)}
-    private int[] listSAPHelper(Iterable<Integer> v, Iterable<Integer> w) {
-        HashMap<Integer, Integer> ancestorA = new HashMap<>();
-        for (int a : v) {
-            firstBFS(a, ancestorA);
+    // length and ancestor of a shortest ancestral path between v and w, found by a single search
+    public Result query(int v, int w) {
+        validateVertex(v);
+        validateVertex(w);
+        if (cache != null) {
+            return cachedQuery(v, w);
         }
-        int[] result = new int[]{-1, Integer.MAX_VALUE};
-        HashMap<Integer, Integer> visited = new HashMap<>();
-        for (int b : w) {
-            int[] currentRes = secondBFS(b, ancestorA, visited);
-            if (currentRes[0] != -1 && currentRes[1] < result[1]) {
-                result[0] = currentRes[0];
-                result[1] = currentRes[1];
-            }
+        return search(v, w);
+    }
+
+    private Result search(int v, int w) {
+        SAPEngine engine = engines.acquire();
+        try {
+            search(engine, v, w);
+            return result(engine);
+        } finally {
+            engines.release(engine);
+        }
+    }
+
+    // engine.search(v, w), timed and reported when there is a listener
+    private void search(SAPEngine engine, int v, int w) {
+        if (listener == null) {
+            engine.search(v, w);
+            return;
+        }
+        long start = System.nanoTime();
+        engine.search(v, w);
+        report(engine, start, 1);
+    }
+
+    // engine.search(v, w) over sizeV and sizeW sources, timed and reported when there is a listener
+    private void search(SAPEngine engine, Iterable<Integer> v, int sizeV, Iterable<Integer> w, int sizeW) {
+        if (listener == null) {
+            engine.search(v, w);
+            return;
+        }
+        long start = System.nanoTime();
+        engine.search(v, w);
+        report(engine, start, (long) sizeV * sizeW);
+    }
+
+    private void report(SAPEngine engine, long start, long pairs) {
+        long nanos = System.nanoTime() - start;
+        listener.queryCompleted(nanos, engine.verticesDequeued(), engine.edgesRelaxed(), pairs, false);
+    }
+
+    // searches in key order, min(v, w) first, so that under ties the answer does not depend
+    // on which order of the pair was asked, or cached, first
+    private Result cachedQuery(int v, int w) {
+        long start = listener == null ? 0 : System.nanoTime();
+        int lo = Math.min(v, w);
+        int hi = Math.max(v, w);
+        if (retired) {
+            return search(lo, hi);
+        }
+        Long key = (long) lo << 32 | hi;
+        Result result = cache.get(key);
+        if (result == null || result.version != version) {
+            result = stamp(search(lo, hi));
+            cache.put(key, result);
+        } else if (listener != null) {
+            listener.queryCompleted(System.nanoTime() - start, 0, 0, 0, true);
         }
         return result;
     }
 
+    // result as cached for this SAP's version of the graph
+    Result stamp(Result result) {
+        return new Result(result.length, result.ancestor, version);
+    }
+
+    // whether a cached result was computed for this SAP's version of the graph
+    boolean owns(Result result) {
+        return result.version == version;
+    }
+
+    private static Result result(SAPEngine engine) {
+        if (engine.ancestor() == -1) {
+            return NO_PATH;
+        }
+        return new Result(engine.length(), engine.ancestor());
+    }
+
     private int validateIterable(Iterable<Integer> it) {
         if (it == null) {
             throw new IllegalArgumentException();
@@ -146,6 +392,7 @@ public class SAP {
             if (i == null) {
                 throw new IllegalArgumentException();
             }
+            validateVertex(i);
             len++;
         }
         return len;
@@ -153,18 +400,163 @@ public class SAP {
 
     // length of shortest ancestral path between any vertex in v and any vertex in w; -1 if no such path
     public int length(Iterable<Integer> v, Iterable<Integer> w) {
-        if (validateIterable(v) == 0 || validateIterable(w) == 0) {
+        int sizeV = validateIterable(v);
+        int sizeW = validateIterable(w);
+        if (sizeV == 0 || sizeW == 0) {
             return -1;
         }
-        return listSAPHelper(v, w)[1];
+        SAPEngine engine = engines.acquire();
+        try {
+            search(engine, v, sizeV, w, sizeW);
+            return engine.length();
+        } finally {
+            engines.release(engine);
+        }
     }
 
     // a common ancestor that participates in shortest ancestral path; -1 if no such path
     public int ancestor(Iterable<Integer> v, Iterable<Integer> w) {
-        if(validateIterable(v) == 0 || validateIterable(w) == 0) {
+        int sizeV = validateIterable(v);
+        int sizeW = validateIterable(w);
+        if (sizeV == 0 || sizeW == 0) {
             return -1;
         }
-        return listSAPHelper(v, w)[0];
+        SAPEngine engine = engines.acquire();
+        try {
+            search(engine, v, sizeV, w, sizeW);
+            return engine.ancestor();
+        } finally {
+            engines.release(engine);
+        }
+    }
+
+    // length and ancestor of a shortest ancestral path between any vertex in v and any vertex in w
+    public Result query(Iterable<Integer> v, Iterable<Integer> w) {
+        int sizeV = validateIterable(v);
+        int sizeW = validateIterable(w);
+        if (sizeV == 0 || sizeW == 0) {
+            return NO_PATH;
+        }
+        SAPEngine engine = engines.acquire();
+        try {
+            search(engine, v, sizeV, w, sizeW);
+            return result(engine);
+        } finally {
+            engines.release(engine);
+        }
+    }
+
+    // lengths of shortest ancestral paths between v[i] and w[i] for every i, computed in parallel
+    public int[] lengths(int[] v, int[] w) {
+        int[] lengths = new int[validatePairs(v, w)];
+        query(v, w, lengths, null);
+        return lengths;
+    }
+
+    // fills lengths[i] and ancestors[i] for the pair (v[i], w[i]) as length/ancestor would, using
+    // every core; either output may be null. Pairs are grouped by v[i], so one BFS from each distinct
+    // v[i] serves all of its partners. Outside LABELED mode ancestors are those SEQUENTIAL would
+    // pick. The cache is not consulted.
+    public void query(int[] v, int[] w, int[] lengths, int[] ancestors) {
+        int n = validatePairs(v, w);
+        if ((lengths != null && lengths.length != n) || (ancestors != null && ancestors.length != n)) {
+            throw new IllegalArgumentException();
+        }
+        // pairs with equal v[i] share the range of the first of them, which is what SAPBatch groups on
+        int[] first = new int[digraph.V()];
+        Arrays.fill(first, -1);
+        int[] fromA = new int[n];
+        int[] toA = new int[n];
+        for (int i = 0; i < n; ++i) {
+            if (first[v[i]] == -1) {
+                first[v[i]] = i;
+            }
+            fromA[i] = first[v[i]];
+            toA[i] = fromA[i] + 1;
+        }
+        int[] fromB = new int[n];
+        int[] toB = new int[n];
+        for (int i = 0; i < n; ++i) {
+            fromB[i] = i;
+            toB[i] = i + 1;
+        }
+        SAPBatch.run(engines, grouped(), v, fromA, toA, w, fromB, toB, lengths, ancestors);
+    }
+
+    // batch of pairs over shared id ranges, for callers in this package such as WordNet
+    void query(int[] idsA, int[] fromA, int[] toA, int[] idsB, int[] fromB, int[] toB, int[] lengths, int[] ancestors) {
+        SAPBatch.run(engines, grouped(), idsA, fromA, toA, idsB, fromB, toB, lengths, ancestors);
+    }
+
+    // whether batches share one sequential BFS per first side; modes with precomputed
+    // indexes answer each pair on its own
+    private boolean grouped() {
+        return mode != Mode.LABELED && mode != Mode.TREE;
+    }
+
+    private int validatePairs(int[] v, int[] w) {
+        if (v == null || w == null || v.length != w.length) {
+            throw new IllegalArgumentException();
+        }
+        for (int i = 0; i < v.length; ++i) {
+            validateVertex(v[i]);
+            validateVertex(w[i]);
+        }
+        return v.length;
+    }
+
+    // result[u] = length(v, u) for every vertex u, from one ancestor BFS out of v and one
+    // BFS along reversed edges seeded with all of v's ancestors at once
+    public int[] lengthsFrom(int v) {
+        validateVertex(v);
+        return lengthsFrom(new int[] { v }, 0, 1);
+    }
+
+    // one-to-many query from the non-empty range ids[from, to) of valid vertices
+    int[] lengthsFrom(int[] ids, int from, int to) {
+        int[] result = new int[digraph.V()];
+        SAPEngine engine = engines.acquire();
+        try {
+            engine.lengthsFrom(ids, from, to, reverse(), result);
+        } finally {
+            engines.release(engine);
+        }
+        return result;
+    }
+
+    private CompactDigraph reverse() {
+        CompactDigraph r = reverse;
+        if (r == null) {
+            synchronized (this) {
+                r = reverse;
+                if (r == null) {
+                    r = digraph.reverse();
+                    reverse = r;
+                }
+            }
+        }
+        return r;
+    }
+
+    // multi-source query over v[vFrom, vTo) and w[wFrom, wTo) without boxing; for callers in this
+    // package that already hold valid vertex ids, such as WordNet's noun index
+    Result query(int[] v, int vFrom, int vTo, int[] w, int wFrom, int wTo) {
+        if (vFrom >= vTo || wFrom >= wTo) {
+            return NO_PATH;
+        }
+        SAPEngine engine = engines.acquire();
+        try {
+            if (listener == null) {
+                engine.search(v, vFrom, vTo, w, wFrom, wTo);
+            } else {
+                long start = System.nanoTime();
+                engine.search(v, vFrom, vTo, w, wFrom, wTo);
+                report(engine, start, (long) (vTo - vFrom) * (wTo - wFrom));
+            }
+            return result(engine);
+        } finally {
+            engines.release(engine);
+        }
     }
 
     // do unit testing of this class
@@ -175,9 +567,8 @@ public class SAP {
         while (!StdIn.isEmpty()) {
             int v = StdIn.readInt();
             int w = StdIn.readInt();
-            int length   = sap.length(v, w);
-            int ancestor = sap.ancestor(v, w);
-            StdOut.printf("length = %d, ancestor = %d\n", length, ancestor);
+            Result result = sap.query(v, w);
+            StdOut.printf("length = %d, ancestor = %d\n", result.length(), result.ancestor());
         }
     }
 }
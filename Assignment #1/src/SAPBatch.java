@@ -0,0 +1,134 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Fork/join driver for batches of SAP queries.
+// Pair i asks for a shortest ancestral path between idsA[fromA[i] .. toA[i]) and
+// idsB[fromB[i] .. toB[i]). Pairs are ordered by their first side, and the ordered run is
+// split between workers at a group boundary near the middle, so each worker runs one full
+// BFS per distinct first side and answers every partner in the group against it. A group
+// with no boundary within THRESHOLD pairs of the middle is split inside, and both halves
+// run its BFS, so one dominant first side still spreads over every worker. Each leaf task
+// borrows one engine from the pool for its whole range.
+@SuppressWarnings("serial")
+final class SAPBatch extends RecursiveAction {
+
+    // pairs per leaf task
+    private static final int THRESHOLD = 512;
+
+    private final SAPEnginePool engines;
+    private final boolean grouped;
+    private final int[] idsA, fromA, toA;
+    private final int[] idsB, fromB, toB;
+    private final int[] order;
+    private final int lo, hi;
+    private final int[] lengths, ancestors;
+
+    private SAPBatch(SAPEnginePool engines, boolean grouped, int[] idsA, int[] fromA, int[] toA,
+                     int[] idsB, int[] fromB, int[] toB, int[] order, int lo, int hi,
+                     int[] lengths, int[] ancestors) {
+        this.engines = engines;
+        this.grouped = grouped;
+        this.idsA = idsA;
+        this.fromA = fromA;
+        this.toA = toA;
+        this.idsB = idsB;
+        this.fromB = fromB;
+        this.toB = toB;
+        this.order = order;
+        this.lo = lo;
+        this.hi = hi;
+        this.lengths = lengths;
+        this.ancestors = ancestors;
+    }
+
+    // answers every pair on the common fork/join pool; either output array may be null.
+    // Grouped batches run sequential searches; otherwise each pair uses the engine's mode.
+    static void run(SAPEnginePool engines, boolean grouped, int[] idsA, int[] fromA, int[] toA,
+                    int[] idsB, int[] fromB, int[] toB, int[] lengths, int[] ancestors) {
+        int n = fromA.length;
+        int[] order = new int[n];
+        if (grouped) {
+            // counting sort on fromA, which lies in [0, idsA.length]; stable, so each group
+            // keeps its pairs in input order
+            int[] next = new int[idsA.length + 2];
+            for (int i = 0; i < n; ++i) {
+                next[fromA[i] + 1]++;
+            }
+            for (int s = 1; s < next.length; ++s) {
+                next[s] += next[s - 1];
+            }
+            for (int i = 0; i < n; ++i) {
+                order[next[fromA[i]]++] = i;
+            }
+        } else {
+            for (int i = 0; i < n; ++i) {
+                order[i] = i;
+            }
+        }
+        ForkJoinPool.commonPool().invoke(new SAPBatch(engines, grouped, idsA, fromA, toA,
+                idsB, fromB, toB, order, 0, n, lengths, ancestors));
+    }
+
+    private boolean sameGroup(int p, int q) {
+        return fromA[p] == fromA[q] && toA[p] == toA[q];
+    }
+
+    @Override
+    protected void compute() {
+        if (hi - lo > THRESHOLD) {
+            int mid = lo + (hi - lo) / 2;
+            int boundary = mid;
+            int limit = Math.min(hi, mid + THRESHOLD);
+            while (boundary < limit && grouped && sameGroup(order[boundary - 1], order[boundary])) {
+                boundary++;
+            }
+            if (boundary < limit) {
+                mid = boundary;
+            }
+            invokeAll(new SAPBatch(engines, grouped, idsA, fromA, toA, idsB, fromB, toB, order, lo, mid, lengths, ancestors),
+                      new SAPBatch(engines, grouped, idsA, fromA, toA, idsB, fromB, toB, order, mid, hi, lengths, ancestors));
+            return;
+        }
+        SAPEngine engine = engines.acquire();
+        try {
+            int i = lo;
+            while (i < hi) {
+                int p = order[i];
+                if (fromA[p] == toA[p]) {
+                    store(p, -1, -1);
+                    i++;
+                } else if (!grouped) {
+                    if (fromB[p] == toB[p]) {
+                        store(p, -1, -1);
+                    } else {
+                        engine.search(idsA, fromA[p], toA[p], idsB, fromB[p], toB[p]);
+                        store(p, engine.length(), engine.ancestor());
+                    }
+                    i++;
+                } else {
+                    engine.prepare(idsA, fromA[p], toA[p]);
+                    for (; i < hi && sameGroup(p, order[i]); ++i) {
+                        int q = order[i];
+                        if (fromB[q] == toB[q]) {
+                            store(q, -1, -1);
+                        } else {
+                            engine.searchPrepared(idsB, fromB[q], toB[q]);
+                            store(q, engine.length(), engine.ancestor());
+                        }
+                    }
+                }
+            }
+        } finally {
+            engines.release(engine);
+        }
+    }
+
+    private void store(int p, int length, int ancestor) {
+        if (lengths != null) {
+            lengths[p] = length;
+        }
+        if (ancestors != null) {
+            ancestors[p] = ancestor;
+        }
+    }
+}
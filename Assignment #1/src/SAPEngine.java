@@ -0,0 +1,618 @@
+import java.util.Arrays;
+
+// Reusable BFS state for shortest ancestral path queries.
+// All scratch arrays are allocated once per engine and reset lazily with an epoch
+// counter, so a query does not allocate anything proportional to the graph.
+// An engine is not thread-safe; use one engine per thread.
+final class SAPEngine {
+
+    // largest number of source pairs joined through the tree index; bigger multi-source
+    // queries are cheaper as one BFS
+    private static final int MAX_TREE_PAIRS = 256;
+
+    private final int[] offsets;
+    private final int[] targets;
+    private final SAP.Mode mode;
+    private final AncestorLabels labels;
+    private final DepthBounds bounds;
+    private final TreeIndex tree;
+    private final int[] distA;
+    private final int[] distB;
+    private final int[] markA;
+    private final int[] markB;
+    private final int[] queueA;
+    private final int[] queueB;
+    private int epochA;
+    private int epochB;
+
+    // result of the last search
+    private int length;
+    private int ancestor;
+    // queueA[0, expandedA) and queueB[0, expandedB) are the vertices whose edges the last search scanned
+    private int expandedA;
+    private int expandedB;
+
+    // labels are required in LABELED mode, bounds in PRUNED mode and tree in TREE mode; each
+    // is ignored otherwise
+    SAPEngine(CompactDigraph digraph, SAP.Mode mode, AncestorLabels labels, DepthBounds bounds, TreeIndex tree) {
+        offsets = digraph.offsets();
+        targets = digraph.targets();
+        this.mode = mode;
+        this.labels = mode == SAP.Mode.LABELED ? labels : null;
+        this.bounds = mode == SAP.Mode.PRUNED ? bounds : null;
+        this.tree = mode == SAP.Mode.TREE ? tree : null;
+        int n = digraph.V();
+        distA = new int[n];
+        distB = new int[n];
+        markA = new int[n];
+        markB = new int[n];
+        queueA = new int[n];
+        queueB = new int[n];
+    }
+
+    int length() {
+        return length;
+    }
+
+    int ancestor() {
+        return ancestor;
+    }
+
+    // vertices taken off a BFS queue and expanded by the last search
+    int verticesDequeued() {
+        return expandedA + expandedB;
+    }
+
+    // edges the last search scanned; summed afterwards from the queues, so the BFS loops
+    // themselves count nothing
+    long edgesRelaxed() {
+        long edges = 0;
+        for (int i = 0; i < expandedA; ++i) {
+            edges += offsets[queueA[i] + 1] - offsets[queueA[i]];
+        }
+        for (int i = 0; i < expandedB; ++i) {
+            edges += offsets[queueB[i] + 1] - offsets[queueB[i]];
+        }
+        return edges;
+    }
+
+    private void nextEpoch() {
+        if (epochA == Integer.MAX_VALUE) {
+            Arrays.fill(markA, 0);
+            epochA = 0;
+        }
+        epochA++;
+        nextEpochB();
+    }
+
+    // forgets the second side only, keeping the first side's distances
+    private void nextEpochB() {
+        if (epochB == Integer.MAX_VALUE) {
+            Arrays.fill(markB, 0);
+            epochB = 0;
+        }
+        epochB++;
+    }
+
+    // single-pair search; v and w must be valid vertices
+    void search(int v, int w) {
+        expandedA = 0;
+        expandedB = 0;
+        if (v == w) {
+            length = 0;
+            ancestor = v;
+            return;
+        }
+        for (int e = offsets[v]; e < offsets[v + 1]; ++e) {
+            if (targets[e] == w) {
+                length = 1;
+                ancestor = w;
+                return;
+            }
+        }
+        for (int e = offsets[w]; e < offsets[w + 1]; ++e) {
+            if (targets[e] == v) {
+                length = 1;
+                ancestor = v;
+                return;
+            }
+        }
+        if (labels != null && labels.hasLabel(v) && labels.hasLabel(w)) {
+            mergeLabels(v, w);
+            return;
+        }
+        if (tree != null && tree.contains(v) && tree.contains(w)) {
+            queueA[0] = v;
+            queueB[0] = w;
+            joinTrees(1, 1);
+            return;
+        }
+        nextEpoch();
+        markA[v] = epochA;
+        distA[v] = 0;
+        queueA[0] = v;
+        markB[w] = epochB;
+        distB[w] = 0;
+        queueB[0] = w;
+        run(1, 1);
+    }
+
+    // multi-source search; both iterables must be non-empty and hold valid vertices
+    void search(Iterable<Integer> v, Iterable<Integer> w) {
+        nextEpoch();
+        int tailA = 0;
+        for (int a : v) {
+            if (markA[a] != epochA) {
+                markA[a] = epochA;
+                distA[a] = 0;
+                queueA[tailA++] = a;
+            }
+        }
+        int tailB = 0;
+        for (int b : w) {
+            if (markB[b] != epochB) {
+                markB[b] = epochB;
+                distB[b] = 0;
+                queueB[tailB++] = b;
+            }
+        }
+        run(tailA, tailB);
+    }
+
+    // multi-source search over v[vFrom, vTo) and w[wFrom, wTo); both ranges must be
+    // non-empty and hold valid vertices
+    void search(int[] v, int vFrom, int vTo, int[] w, int wFrom, int wTo) {
+        nextEpoch();
+        int tailA = 0;
+        for (int i = vFrom; i < vTo; ++i) {
+            int a = v[i];
+            if (markA[a] != epochA) {
+                markA[a] = epochA;
+                distA[a] = 0;
+                queueA[tailA++] = a;
+            }
+        }
+        int tailB = 0;
+        for (int i = wFrom; i < wTo; ++i) {
+            int b = w[i];
+            if (markB[b] != epochB) {
+                markB[b] = epochB;
+                distB[b] = 0;
+                queueB[tailB++] = b;
+            }
+        }
+        run(tailA, tailB);
+    }
+
+    // search over v[vFrom, vTo) and w[wFrom, wTo), whatever the mode, that only looks for paths
+    // of length at most limit and reports -1 if there is none; bounds (may be null) prunes
+    // both sides. Both ranges must be non-empty and hold valid vertices
+    void searchBounded(int[] v, int vFrom, int vTo, int[] w, int wFrom, int wTo, int limit, DepthBounds bounds) {
+        expandedA = 0;
+        expandedB = 0;
+        nextEpoch();
+        int tailA = 0;
+        for (int i = vFrom; i < vTo; ++i) {
+            int a = v[i];
+            if (markA[a] != epochA) {
+                markA[a] = epochA;
+                distA[a] = 0;
+                queueA[tailA++] = a;
+            }
+        }
+        int tailB = 0;
+        for (int i = wFrom; i < wTo; ++i) {
+            int b = w[i];
+            if (markB[b] != epochB) {
+                markB[b] = epochB;
+                distB[b] = 0;
+                queueB[tailB++] = b;
+            }
+        }
+        prunedBFS(tailA, tailB, limit + 1, bounds);
+    }
+
+    // first half of a sequential search: one full BFS from ids[from, to) whose distances
+    // every following searchPrepared call reuses; the range must be non-empty and valid
+    void prepare(int[] ids, int from, int to) {
+        nextEpoch();
+        int tail = 0;
+        for (int i = from; i < to; ++i) {
+            int a = ids[i];
+            if (markA[a] != epochA) {
+                markA[a] = epochA;
+                distA[a] = 0;
+                queueA[tail++] = a;
+            }
+        }
+        firstBFS(tail);
+    }
+
+    // second half of a sequential search from ids[from, to) against the prepared side;
+    // gives the same result as a SEQUENTIAL search over both ranges
+    void searchPrepared(int[] ids, int from, int to) {
+        nextEpochB();
+        int tail = 0;
+        for (int i = from; i < to; ++i) {
+            int b = ids[i];
+            if (markB[b] != epochB) {
+                markB[b] = epochB;
+                distB[b] = 0;
+                queueB[tail++] = b;
+            }
+        }
+        secondBFS(tail);
+    }
+
+    // result[u] = length of a shortest ancestral path between ids[from, to) and u, or -1, for
+    // every vertex u. One BFS collects the sources' ancestors, already in nondecreasing
+    // distance order; a BFS over the reversed edges then starts from all of them at once.
+    // Merging that seed list with the BFS queue pops vertices in nondecreasing distance, so
+    // each vertex is settled by its first pop and enters the queue at most once.
+    void lengthsFrom(int[] ids, int from, int to, CompactDigraph reverse, int[] result) {
+        nextEpoch();
+        int tail = 0;
+        for (int i = from; i < to; ++i) {
+            int a = ids[i];
+            if (markA[a] != epochA) {
+                markA[a] = epochA;
+                distA[a] = 0;
+                queueA[tail++] = a;
+            }
+        }
+        lengthsFrom(firstBFS(tail), reverse.offsets(), reverse.targets(), result);
+    }
+
+    private void lengthsFrom(int seeds, int[] reverseOffsets, int[] reverseTargets, int[] result) {
+        Arrays.fill(result, -1);
+        for (int i = 0; i < seeds; ++i) {
+            result[queueA[i]] = distA[queueA[i]];
+        }
+        int s = 0, head = 0, tail = 0;
+        while (s < seeds || head < tail) {
+            int current;
+            if (head == tail || (s < seeds && distA[queueA[s]] <= result[queueB[head]])) {
+                current = queueA[s++];
+                if (result[current] != distA[current]) {
+                    // reached sooner from another ancestor; already in the queue
+                    continue;
+                }
+            } else {
+                current = queueB[head++];
+            }
+            int step = result[current] + 1;
+            for (int e = reverseOffsets[current], end = reverseOffsets[current + 1]; e < end; ++e) {
+                int candidate = reverseTargets[e];
+                if (result[candidate] == -1 || step < result[candidate]) {
+                    result[candidate] = step;
+                    queueB[tail++] = candidate;
+                }
+            }
+        }
+    }
+
+    // queueA[0, tailA) and queueB[0, tailB) hold the marked sources of each side
+    private void run(int tailA, int tailB) {
+        expandedA = 0;
+        expandedB = 0;
+        if (mode == SAP.Mode.SEQUENTIAL) {
+            firstBFS(tailA);
+            secondBFS(tailB);
+        } else if (mode == SAP.Mode.PRUNED) {
+            prunedBFS(tailA, tailB, Integer.MAX_VALUE, bounds);
+        } else if (labels != null && allLabeled(queueA, tailA) && allLabeled(queueB, tailB)) {
+            joinLabels(tailA, tailB);
+        } else if (tree != null && tailA * tailB <= MAX_TREE_PAIRS
+                && allInTree(queueA, tailA) && allInTree(queueB, tailB)) {
+            joinTrees(tailA, tailB);
+        } else {
+            lockstepBFS(tailA, tailB);
+        }
+    }
+
+    private boolean allLabeled(int[] queue, int tail) {
+        for (int i = 0; i < tail; ++i) {
+            if (!labels.hasLabel(queue[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean allInTree(int[] queue, int tail) {
+        for (int i = 0; i < tail; ++i) {
+            if (!tree.contains(queue[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // shortest of the paths through the lowest common ancestor of each pair of sources in
+    // queueA[0, tailA) and queueB[0, tailB), all in the tree index; the first pair wins ties
+    private void joinTrees(int tailA, int tailB) {
+        int bestLength = Integer.MAX_VALUE;
+        int bestAncestor = -1;
+        for (int i = 0; i < tailA; ++i) {
+            int a = queueA[i];
+            for (int j = 0; j < tailB; ++j) {
+                int b = queueB[j];
+                int x = tree.lca(a, b);
+                if (x != -1 && tree.depth(a) + tree.depth(b) - 2 * tree.depth(x) < bestLength) {
+                    bestLength = tree.depth(a) + tree.depth(b) - 2 * tree.depth(x);
+                    bestAncestor = x;
+                }
+            }
+        }
+        setResult(bestLength, bestAncestor);
+    }
+
+    // merge-join of two sorted labels; among tied ancestors the smallest id wins
+    private void mergeLabels(int v, int w) {
+        long[] entries = labels.entries();
+        int i = labels.start(v), iEnd = labels.end(v);
+        int j = labels.start(w), jEnd = labels.end(w);
+        int bestLength = Integer.MAX_VALUE;
+        int bestAncestor = -1;
+        while (i < iEnd && j < jEnd) {
+            int x = (int) (entries[i] >>> 32);
+            int y = (int) (entries[j] >>> 32);
+            if (x < y) {
+                i++;
+            } else if (x > y) {
+                j++;
+            } else {
+                int length = (int) entries[i] + (int) entries[j];
+                if (length < bestLength) {
+                    bestLength = length;
+                    bestAncestor = x;
+                }
+                i++;
+                j++;
+            }
+        }
+        setResult(bestLength, bestAncestor);
+    }
+
+    // multi-source join: folds the labels of the first side into distA (each source is
+    // already marked at distance 0), then probes it with the labels of the second side
+    private void joinLabels(int tailA, int tailB) {
+        long[] entries = labels.entries();
+        for (int i = 0; i < tailA; ++i) {
+            int a = queueA[i];
+            for (int k = labels.start(a); k < labels.end(a); ++k) {
+                int x = (int) (entries[k] >>> 32);
+                int d = (int) entries[k];
+                if (markA[x] != epochA || d < distA[x]) {
+                    markA[x] = epochA;
+                    distA[x] = d;
+                }
+            }
+        }
+        int bestLength = Integer.MAX_VALUE;
+        int bestAncestor = -1;
+        for (int i = 0; i < tailB; ++i) {
+            int b = queueB[i];
+            for (int k = labels.start(b); k < labels.end(b); ++k) {
+                int x = (int) (entries[k] >>> 32);
+                if (markA[x] == epochA && distA[x] + (int) entries[k] < bestLength) {
+                    bestLength = distA[x] + (int) entries[k];
+                    bestAncestor = x;
+                }
+            }
+        }
+        setResult(bestLength, bestAncestor);
+    }
+
+    // BFS from the vertices in queueA[0, tail), recording every ancestor in distA;
+    // returns the number of ancestors, which are left in queueA in BFS order.
+    // OffHeapEngine.firstBFS is this search over direct buffers; keep the two in step
+    private int firstBFS(int tail) {
+        int head = 0;
+        while (head < tail) {
+            int current = queueA[head++];
+            int step = distA[current] + 1;
+            for (int e = offsets[current], end = offsets[current + 1]; e < end; ++e) {
+                int candidate = targets[e];
+                if (markA[candidate] != epochA) {
+                    markA[candidate] = epochA;
+                    distA[candidate] = step;
+                    queueA[tail++] = candidate;
+                }
+            }
+        }
+        expandedA = tail;
+        return tail;
+    }
+
+    // BFS from the vertices in queueB[0, tail), keeping the first strictly shorter
+    // ancestral path found; stops once no deeper level can improve on it.
+    // OffHeapEngine.secondBFS is this search over direct buffers; keep the two in step
+    private void secondBFS(int tail) {
+        int bestLength = Integer.MAX_VALUE;
+        int bestAncestor = -1;
+        for (int i = 0; i < tail; ++i) {
+            int b = queueB[i];
+            if (markA[b] == epochA && distA[b] < bestLength) {
+                bestLength = distA[b];
+                bestAncestor = b;
+            }
+        }
+        int head = 0;
+        while (head < tail) {
+            int current = queueB[head];
+            int step = distB[current] + 1;
+            if (step >= bestLength) {
+                break;
+            }
+            head++;
+            for (int e = offsets[current], end = offsets[current + 1]; e < end; ++e) {
+                int candidate = targets[e];
+                if (markB[candidate] == epochB) {
+                    continue;
+                }
+                markB[candidate] = epochB;
+                distB[candidate] = step;
+                queueB[tail++] = candidate;
+                if (markA[candidate] == epochA && step + distA[candidate] < bestLength) {
+                    bestLength = step + distA[candidate];
+                    bestAncestor = candidate;
+                }
+            }
+        }
+        expandedB = head;
+        setResult(bestLength, bestAncestor);
+    }
+
+    // alternates one BFS level from each side; a vertex not yet reached from one side
+    // is at least one level further away, so the search stops as soon as the next level
+    // of every unfinished side is no shorter than the best ancestral path found so far
+    private void lockstepBFS(int tailA, int tailB) {
+        int bestLength = Integer.MAX_VALUE;
+        int bestAncestor = -1;
+        for (int i = 0; i < tailB; ++i) {
+            int b = queueB[i];
+            if (markA[b] == epochA) {
+                bestLength = 0;
+                bestAncestor = b;
+                break;
+            }
+        }
+        int headA = 0, headB = 0;
+        int step = 1;
+        while (step < bestLength && (headA < tailA || headB < tailB)) {
+            int levelEnd = tailA;
+            while (headA < levelEnd) {
+                int current = queueA[headA++];
+                for (int e = offsets[current], end = offsets[current + 1]; e < end; ++e) {
+                int candidate = targets[e];
+                    if (markA[candidate] == epochA) {
+                        continue;
+                    }
+                    markA[candidate] = epochA;
+                    distA[candidate] = step;
+                    queueA[tailA++] = candidate;
+                    if (markB[candidate] == epochB && step + distB[candidate] < bestLength) {
+                        bestLength = step + distB[candidate];
+                        bestAncestor = candidate;
+                    }
+                }
+            }
+            levelEnd = tailB;
+            while (headB < levelEnd) {
+                int current = queueB[headB++];
+                for (int e = offsets[current], end = offsets[current + 1]; e < end; ++e) {
+                int candidate = targets[e];
+                    if (markB[candidate] == epochB) {
+                        continue;
+                    }
+                    markB[candidate] = epochB;
+                    distB[candidate] = step;
+                    queueB[tailB++] = candidate;
+                    if (markA[candidate] == epochA && step + distA[candidate] < bestLength) {
+                        bestLength = step + distA[candidate];
+                        bestAncestor = candidate;
+                    }
+                }
+            }
+            step++;
+        }
+        expandedA = headA;
+        expandedB = headB;
+        setResult(bestLength, bestAncestor);
+    }
+
+    // lockstepBFS that only reports paths shorter than cutoff. With bounds, a vertex is
+    // neither queued nor expanded once its distance plus the lower bound on the rest of any
+    // path through it (see DepthBounds) is no shorter than the best path found so far
+    private void prunedBFS(int tailA, int tailB, int cutoff, DepthBounds bounds) {
+        int[] level = bounds == null ? null : bounds.level();
+        int minDepthA = Integer.MAX_VALUE;
+        int minDepthB = Integer.MAX_VALUE;
+        if (bounds != null) {
+            int[] depth = bounds.depth();
+            for (int i = 0; i < tailA; ++i) {
+                minDepthA = Math.min(minDepthA, depth[queueA[i]]);
+            }
+            for (int i = 0; i < tailB; ++i) {
+                minDepthB = Math.min(minDepthB, depth[queueB[i]]);
+            }
+        }
+        int bestLength = cutoff;
+        int bestAncestor = -1;
+        for (int i = 0; i < tailB; ++i) {
+            int b = queueB[i];
+            if (markA[b] == epochA) {
+                bestLength = 0;
+                bestAncestor = b;
+                break;
+            }
+        }
+        int headA = 0, headB = 0;
+        int step = 1;
+        while (step < bestLength && (headA < tailA || headB < tailB)) {
+            int levelEnd = tailA;
+            while (headA < levelEnd) {
+                int current = queueA[headA++];
+                if (level != null && distA[current] + minDepthB >= bestLength
+                        && distA[current] + Math.max(0, minDepthB - level[current]) >= bestLength) {
+                    continue;
+                }
+                for (int e = offsets[current], end = offsets[current + 1]; e < end; ++e) {
+                    int candidate = targets[e];
+                    if (markA[candidate] == epochA) {
+                        continue;
+                    }
+                    markA[candidate] = epochA;
+                    distA[candidate] = step;
+                    if (markB[candidate] == epochB && step + distB[candidate] < bestLength) {
+                        bestLength = step + distB[candidate];
+                        bestAncestor = candidate;
+                    }
+                    if (level == null || step + minDepthB < bestLength
+                            || step + Math.max(0, minDepthB - level[candidate]) < bestLength) {
+                        queueA[tailA++] = candidate;
+                    }
+                }
+            }
+            levelEnd = tailB;
+            while (headB < levelEnd) {
+                int current = queueB[headB++];
+                if (level != null && distB[current] + minDepthA >= bestLength
+                        && distB[current] + Math.max(0, minDepthA - level[current]) >= bestLength) {
+                    continue;
+                }
+                for (int e = offsets[current], end = offsets[current + 1]; e < end; ++e) {
+                    int candidate = targets[e];
+                    if (markB[candidate] == epochB) {
+                        continue;
+                    }
+                    markB[candidate] = epochB;
+                    distB[candidate] = step;
+                    if (markA[candidate] == epochA && step + distA[candidate] < bestLength) {
+                        bestLength = step + distA[candidate];
+                        bestAncestor = candidate;
+                    }
+                    if (level == null || step + minDepthA < bestLength
+                            || step + Math.max(0, minDepthA - level[candidate]) < bestLength) {
+                        queueB[tailB++] = candidate;
+                    }
+                }
+            }
+            step++;
+        }
+        expandedA = headA;
+        expandedB = headB;
+        setResult(bestLength, bestAncestor);
+    }
+
+    private void setResult(int bestLength, int bestAncestor) {
+        if (bestAncestor == -1) {
+            length = -1;
+            ancestor = -1;
+        } else {
+            length = bestLength;
+            ancestor = bestAncestor;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Lock-free pool of BFS engines sharing one read-only digraph.
+// A caller borrows an engine for the duration of one query and hands it back, so any
+// number of platform or virtual threads can query concurrently while only as many
+// engines exist as there are queries in flight. Returning an engine takes no allocation;
+// engines beyond the pool's capacity are simply dropped.
+final class SAPEnginePool {
+
+    private final CompactDigraph digraph;
+    private final SAP.Mode mode;
+    private final AncestorLabels labels;
+    private final DepthBounds bounds;
+    private final TreeIndex tree;
+    private final AtomicReferenceArray<SAPEngine> slots;
+
+    SAPEnginePool(CompactDigraph digraph, SAP.Mode mode, AncestorLabels labels, DepthBounds bounds,
+                  TreeIndex tree) {
+        this.digraph = digraph;
+        this.mode = mode;
+        this.labels = labels;
+        this.bounds = bounds;
+        this.tree = tree;
+        slots = new AtomicReferenceArray<>(2 * Runtime.getRuntime().availableProcessors());
+        slots.set(0, new SAPEngine(digraph, mode, labels, bounds, tree));
+    }
+
+    SAPEngine acquire() {
+        int n = slots.length();
+        int start = (int) (Thread.currentThread().getId() % n);
+        for (int i = 0; i < n; ++i) {
+            int slot = (start + i) % n;
+            SAPEngine engine = slots.get(slot);
+            if (engine != null && slots.compareAndSet(slot, engine, null)) {
+                return engine;
+            }
+        }
+        return new SAPEngine(digraph, mode, labels, bounds, tree);
+    }
+
+    void release(SAPEngine engine) {
+        int n = slots.length();
+        int start = (int) (Thread.currentThread().getId() % n);
+        for (int i = 0; i < n; ++i) {
+            int slot = (start + i) % n;
+            if (slots.get(slot) == null && slots.compareAndSet(slot, null, engine)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+// Lowest common ancestors for the tree-shaped part of a digraph: the vertices all of whose
+// ancestors, themselves included, have at most one successor. The ancestors of such a vertex
+// form a single chain up to a root (a vertex without successors), so these vertices make a
+// forest, and the shortest ancestral path between two of them is the unique path through
+// their lowest common ancestor. Binary lifting over primitive arrays finds it in O(log V);
+// queries on any other vertex are left to BFS.
+final class TreeIndex {
+
+    // depth[v] = edges from v up to its root, or -1 if v is not in the forest
+    private final int[] depth;
+    private final int[] root;
+    // up[k][v] = ancestor 2^k edges above v, or its root if that is closer
+    private final int[][] up;
+
+    // reverse must be digraph.reverse()
+    TreeIndex(CompactDigraph digraph, CompactDigraph reverse) {
+        int n = digraph.V();
+        int[] offsets = digraph.offsets();
+        int[] targets = digraph.targets();
+        int[] reverseOffsets = reverse.offsets();
+        int[] reverseTargets = reverse.targets();
+        depth = new int[n];
+        root = new int[n];
+        int[] parent = new int[n];
+        int[] queue = new int[n];
+        int tail = 0;
+        for (int v = 0; v < n; ++v) {
+            parent[v] = v;
+            if (offsets[v + 1] == offsets[v]) {
+                root[v] = v;
+                queue[tail++] = v;
+            } else {
+                depth[v] = -1;
+            }
+        }
+        // down from the roots, only into vertices whose single successor is already in the forest
+        int maxDepth = 0;
+        for (int head = 0; head < tail; ++head) {
+            int current = queue[head];
+            for (int e = reverseOffsets[current]; e < reverseOffsets[current + 1]; ++e) {
+                int child = reverseTargets[e];
+                if (depth[child] == -1 && offsets[child + 1] - offsets[child] == 1) {
+                    depth[child] = depth[current] + 1;
+                    root[child] = root[current];
+                    parent[child] = current;
+                    maxDepth = Math.max(maxDepth, depth[child]);
+                    queue[tail++] = child;
+                }
+            }
+        }
+        int levels = 1;
+        while (1 << levels <= maxDepth) {
+            levels++;
+        }
+        up = new int[levels][];
+        up[0] = parent;
+        for (int k = 1; k < levels; ++k) {
+            int[] half = up[k - 1];
+            int[] full = new int[n];
+            for (int v = 0; v < n; ++v) {
+                full[v] = half[half[v]];
+            }
+            up[k] = full;
+        }
+    }
+
+    boolean contains(int v) {
+        return depth[v] != -1;
+    }
+
+    // edges from v up to its root; v must be in the forest
+    int depth(int v) {
+        return depth[v];
+    }
+
+    // lowest common ancestor of v and w, both in the forest, or -1 if they are in different trees
+    int lca(int v, int w) {
+        if (root[v] != root[w]) {
+            return -1;
+        }
+        if (depth[v] < depth[w]) {
+            int swap = v;
+            v = w;
+            w = swap;
+        }
+        for (int k = up.length - 1, gap = depth[v] - depth[w]; k >= 0; --k) {
+            if ((gap & 1 << k) != 0) {
+                v = up[k][v];
+            }
+        }
+        if (v == w) {
+            return v;
+        }
+        for (int k = up.length - 1; k >= 0; --k) {
+            if (up[k][v] != up[k][w]) {
+                v = up[k][v];
+                w = up[k][w];
+            }
+        }
+        return up[0][v];
+    }
+}
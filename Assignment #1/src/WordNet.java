@@ -1,78 +1,160 @@
-import edu.princeton.cs.algs4.Digraph;
-import edu.princeton.cs.algs4.In;
 import edu.princeton.cs.algs4.StdOut;
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Scanner;
+import java.util.PriorityQueue;
 
+// The hypernym graph must be a rooted DAG; reading one that is not, or an update that would
+// break that, throws IllegalArgumentException.
+// Thread-safe; one instance can serve concurrent distance/sap calls from any number of
+// threads. addSynset and addHypernym publish a new immutable version of the nouns and the
+// graph; each query reads one version, so it never sees an update half-applied.
 public class WordNet {
 
-    private final HashMap<Integer, String> vertexIdx2Synset;
-    private final HashMap<String, List<Integer>> string2VertId;
-    private final SAP sap;
+    // one consistent state of the dictionary and the hypernym graph, which is always a rooted DAG:
+    // checked once when read from text, and kept so by addSynset and addHypernym
+    private static final class Version {
+        private final NounIndex index;
+        private final SAP sap;
+
+        Version(NounIndex index, SAP sap) {
+            this.index = index;
+            this.sap = sap;
+        }
+    }
+
+    private volatile Version current;
+    private final QueryCache<String, SAP.Result> cache;
+    private final QueryListener listener;
 
     // constructor takes the name of the two input files
     public WordNet(String synsets, String hypernyms) {
+        this(synsets, hypernyms, null);
+    }
+
+    // same as above, with an optional cache (may be null) of distance/sap results
+    // keyed on the unordered noun pair; both orders of a pair then search from the noun that
+    // sorts first, so where ancestors tie, sap does not depend on which order came first
+    public WordNet(String synsets, String hypernyms, QueryCache<String, SAP.Result> cache) {
+        this(synsets, hypernyms, cache, null);
+    }
+
+    // same as above, reporting every distance/sap call to listener (may be null); a cache
+    // hit is reported with no BFS work, a miss with the work of its search
+    public WordNet(String synsets, String hypernyms, QueryCache<String, SAP.Result> cache, QueryListener listener) {
         if (synsets == null || hypernyms == null) {
             throw new IllegalArgumentException();
         }
-        vertexIdx2Synset = new HashMap<>();
-        string2VertId = new HashMap<>();
-        try (Scanner scanner = new Scanner(new File(synsets))) {
-            while (scanner.hasNextLine()) {
-                String[] synset = scanner.nextLine().split(",");
-                int v = Integer.parseInt(synset[0]);
-                String[] synonyms = synset[1].split(" ");
-                vertexIdx2Synset.put(v, synset[1]);
-                for (String synonym : synonyms) {
-                    if (string2VertId.get(synonym) != null) {
-                        string2VertId.get(synonym).add(v);
-                    } else {
-                        List<Integer> valueList = new ArrayList<>();
-                        valueList.add(v);
-                        string2VertId.put(synonym, valueList);
-                    }
-                }
-            }
+        WordNetLoader loader = new WordNetLoader(synsets, hypernyms);
+        int[] order = RootedDAG.check(loader.digraph());
+        current = new Version(loader.index(), new SAP(loader.digraph(), SAP.Mode.SEQUENTIAL, null, listener, order));
+        this.cache = cache;
+        this.listener = listener;
+    }
+
+    // constructor takes the name of a snapshot file written by save(); its graph was checked
+    // when first read from text, so it is not checked again
+    public WordNet(String snapshot) {
+        if (snapshot == null) {
+            throw new IllegalArgumentException();
+        }
+        WordNetSnapshot mapped = WordNetSnapshot.open(snapshot);
+        current = new Version(mapped, new SAP(mapped.digraph(), SAP.Mode.SEQUENTIAL, null));
+        cache = null;
+        listener = null;
+    }
+
+    // writes the nouns, synsets and hypernym graph to a snapshot file that the
+    // one-argument constructor memory-maps
+    public void save(String snapshot) {
+        if (snapshot == null) {
+            throw new IllegalArgumentException();
+        }
+        Version version = current;
+        try {
+            WordNetSnapshot.write(snapshot, version.sap.digraph(), version.index);
         } catch (IOException e) {
-            e.printStackTrace();
-        }
-        Digraph digraph = new Digraph(getNumberOfLines(hypernyms));
-        try (Scanner scanner = new Scanner(new File(hypernyms))) {
-            while (scanner.hasNextLine()) {
-                String[] hypernym = scanner.nextLine().split(",");
-                int currentNode = Integer.parseInt(hypernym[0]);
-                for (int i = 1; i < hypernym.length; ++i) {
-                    digraph.addEdge(currentNode, Integer.parseInt(hypernym[i]));
-                }
+            throw new IllegalArgumentException("could not write " + snapshot, e);
+        }
+    }
+
+    // adds a synset whose synonyms are the space-separated nouns of synset (second field of
+    // synsets.txt), with hypernym as its first hypernym, and returns its id. Nouns already in
+    // WordNet gain it as one more synset, so cached results involving them are dropped;
+    // nothing is re-read or rebuilt. Nouns must be non-empty and free of newlines
+    public synchronized int addSynset(String synset, int hypernym) {
+        if (synset == null || synset.indexOf('\n') != -1) {
+            throw new IllegalArgumentException();
+        }
+        for (String noun : synset.split(" ", -1)) {
+            if (noun.isEmpty()) {
+                throw new IllegalArgumentException("empty noun in \"" + synset + "\"");
             }
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
         }
-        sap = new SAP(digraph);
+        Version version = current;
+        if (hypernym < 0 || hypernym >= version.sap.V()) {
+            throw new IllegalArgumentException();
+        }
+        SAP sap = version.sap.withVertex(hypernym);
+        int id = sap.V() - 1;
+        Version next = new Version(OverlayNounIndex.withSynset(version.index, id, synset), sap);
+        current = next;
+        if (cache != null) {
+            List<String> nouns = List.of(synset.split(" "));
+            cache.replaceAll((key, result) -> {
+                if (!version.sap.owns(result)) {
+                    return result;
+                }
+                int split = key.indexOf('\n');
+                return nouns.contains(key.substring(0, split)) || nouns.contains(key.substring(split + 1))
+                        ? null : next.sap.stamp(result);
+            });
+        }
+        return id;
     }
 
-    private int getNumberOfLines(String fileName) {
-        int lines = 0;
-        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
-            while (reader.readLine() != null) {
-                lines++;
+    // adds the hypernym edge synset->hypernym, unless hypernym is synset or one of its
+    // hyponyms, which would close a cycle. Only nouns with a synset at or below synset get
+    // new ancestors, so only cached results involving them are dropped
+    public synchronized void addHypernym(int synset, int hypernym) {
+        Version version = current;
+        if (synset < 0 || hypernym < 0 || synset >= version.sap.V() || hypernym >= version.sap.V()) {
+            throw new IllegalArgumentException();
+        }
+        boolean[] changed = version.sap.descendants(synset);
+        if (changed[hypernym]) {
+            throw new IllegalArgumentException("synset " + hypernym + " is a hyponym of " + synset);
+        }
+        Version next = new Version(version.index, version.sap.withEdge(synset, hypernym));
+        current = next;
+        if (cache != null) {
+            NounIndex index = version.index;
+            int[] ids = index.synsetIds();
+            cache.replaceAll((key, result) -> {
+                if (!version.sap.owns(result)) {
+                    return result;
+                }
+                int split = key.indexOf('\n');
+                return touches(index, ids, key.substring(0, split), changed)
+                        || touches(index, ids, key.substring(split + 1), changed) ? null : next.sap.stamp(result);
+            });
+        }
+    }
+
+    private static boolean touches(NounIndex index, int[] ids, String noun, boolean[] changed) {
+        int i = index.find(noun);
+        for (int j = index.first(i); j < index.first(i + 1); ++j) {
+            if (changed[ids[j]]) {
+                return true;
             }
-        } catch (IOException e) {
-            e.printStackTrace();
         }
-        return lines;
+        return false;
     }
 
     // returns all WordNet nouns
     public Iterable<String> nouns() {
-        return string2VertId.keySet();
+        return current.index.nouns();
     }
 
     // is the word a WordNet noun?
@@ -80,49 +162,188 @@ public class WordNet {
         if (word == null) {
             throw new IllegalArgumentException();
         }
-        return string2VertId.containsKey(word);
+        return current.index.find(word) != -1;
     }
 
-    private int[] helper(String nounA, String nounB) {
-        int minDistance = Integer.MAX_VALUE;
-        int ancestor = -1;
-        for (int a : string2VertId.get(nounA)) {
-            for (int b : string2VertId.get(nounB)) {
-                int currRes = sap.length(a, b);
-                if (currRes < minDistance) {
-                    minDistance = currRes;
-                    ancestor = sap.ancestor(a, b);
-                }
-            }
+    // one multi-source search over all synsets of both nouns
+    private SAP.Result helper(Version version, String nounA, String nounB) {
+        if (nounA == null || nounB == null) {
+            throw new IllegalArgumentException();
+        }
+        if (cache == null) {
+            return search(version, nounA, nounB);
+        }
+        // with a cache, both orders of the pair search in key order, so ties break the same way
+        // whichever was asked first
+        if (nounA.compareTo(nounB) > 0) {
+            String swap = nounA;
+            nounA = nounB;
+            nounB = swap;
+        }
+        if (current != version) {
+            // a superseded version no longer uses the cache
+            return search(version, nounA, nounB);
+        }
+        long start = listener == null ? 0 : System.nanoTime();
+        // nouns never contain a newline, so the key is unambiguous
+        String key = nounA + '\n' + nounB;
+        SAP.Result result = cache.get(key);
+        if (result == null || !version.sap.owns(result)) {
+            result = version.sap.stamp(search(version, nounA, nounB));
+            cache.put(key, result);
+        } else if (listener != null) {
+            listener.queryCompleted(System.nanoTime() - start, 0, 0, 0, true);
         }
-        if (ancestor == -1) {
-            return new int[]{-1, -1};
+        return result;
+    }
+
+    private static SAP.Result search(Version version, String nounA, String nounB) {
+        NounIndex index = version.index;
+        int a = index.find(nounA);
+        int b = index.find(nounB);
+        if (a == -1 || b == -1) {
+            throw new IllegalArgumentException();
         }
-        return new int[]{ancestor, minDistance};
+        int[] ids = index.synsetIds();
+        return version.sap.query(ids, index.first(a), index.first(a + 1), ids, index.first(b), index.first(b + 1));
     }
 
     // distance between nounA and nounB (defined below)
     public int distance(String nounA, String nounB) {
-        if (nounA == null || nounB == null || !isNoun(nounA) || !isNoun(nounB)) {
+        return helper(current, nounA, nounB).length();
+    }
+
+    // distance between nounA and nounB if it is at most maxDistance, -1 otherwise; the search
+    // stops at maxDistance and skips synsets too deep or too shallow to be on a closer path
+    public int distance(String nounA, String nounB, int maxDistance) {
+        if (nounA == null || nounB == null || maxDistance < 0) {
             throw new IllegalArgumentException();
         }
-        return helper(nounA, nounB)[1];
+        Version version = current;
+        NounIndex index = version.index;
+        int a = index.find(nounA);
+        int b = index.find(nounB);
+        if (a == -1 || b == -1) {
+            throw new IllegalArgumentException();
+        }
+        int[] ids = index.synsetIds();
+        return version.sap.length(ids, index.first(a), index.first(a + 1),
+                ids, index.first(b), index.first(b + 1), maxDistance, version.sap.bounds());
     }
 
     // a synset (second field of synsets.txt) that is the common ancestor of nounA and nounB
     // in a shortest ancestral path (defined below)
     public String sap(String nounA, String nounB) {
-        if (nounA == null || nounB == null || !isNoun(nounA) || !isNoun(nounB)) {
+        Version version = current;
+        int ancestor = helper(version, nounA, nounB).ancestor();
+        return version.index.synset(ancestor);
+    }
+
+    // distances between nounsA[i] and nounsB[i] for every i, computed in parallel; pairs that share
+    // nounsA[i] reuse one BFS from its synsets
+    public int[] distances(String[] nounsA, String[] nounsB) {
+        if (nounsA == null || nounsB == null || nounsA.length != nounsB.length) {
+            throw new IllegalArgumentException();
+        }
+        Version version = current;
+        NounIndex index = version.index;
+        int n = nounsA.length;
+        int[] fromA = new int[n], toA = new int[n];
+        int[] fromB = new int[n], toB = new int[n];
+        for (int i = 0; i < n; ++i) {
+            if (nounsA[i] == null || nounsB[i] == null) {
+                throw new IllegalArgumentException();
+            }
+            int a = index.find(nounsA[i]);
+            int b = index.find(nounsB[i]);
+            if (a == -1 || b == -1) {
+                throw new IllegalArgumentException();
+            }
+            fromA[i] = index.first(a);
+            toA[i] = index.first(a + 1);
+            fromB[i] = index.first(b);
+            toB[i] = index.first(b + 1);
+        }
+        int[] ids = index.synsetIds();
+        int[] lengths = new int[n];
+        version.sap.query(ids, fromA, toA, ids, fromB, toB, lengths, null);
+        return lengths;
+    }
+
+    // the k nouns closest to noun (itself excluded), nearest first and alphabetical among
+    // equal distances; unreachable nouns are never returned. One pass over the graph gives
+    // the distance from noun to every synset.
+    public Iterable<String> nearest(String noun, int k) {
+        if (noun == null || k < 0) {
             throw new IllegalArgumentException();
         }
-        int ancestor = helper(nounA, nounB)[0];
-        return vertexIdx2Synset.get(ancestor);
+        Version version = current;
+        NounIndex index = version.index;
+        int a = index.find(noun);
+        if (a == -1) {
+            throw new IllegalArgumentException();
+        }
+        int[] ids = index.synsetIds();
+        int[] lengths = version.sap.lengthsFrom(ids, index.first(a), index.first(a + 1));
+        // max-heap of the best k so far, worst on top
+        PriorityQueue<Neighbor> best = new PriorityQueue<>(Math.max(1, k), Collections.reverseOrder());
+        for (String other : index.nouns()) {
+            int b = index.find(other);
+            if (b == a) {
+                continue;
+            }
+            int length = -1;
+            for (int i = index.first(b); i < index.first(b + 1); ++i) {
+                int l = lengths[ids[i]];
+                if (l != -1 && (length == -1 || l < length)) {
+                    length = l;
+                }
+            }
+            if (length == -1) {
+                continue;
+            }
+            Neighbor candidate = new Neighbor(other, length);
+            if (best.size() < k) {
+                best.add(candidate);
+            } else if (k > 0 && candidate.compareTo(best.peek()) < 0) {
+                best.poll();
+                best.add(candidate);
+            }
+        }
+        List<String> result = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            result.add(best.poll().noun);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private static final class Neighbor implements Comparable<Neighbor> {
+        private final String noun;
+        private final int length;
+
+        Neighbor(String noun, int length) {
+            this.noun = noun;
+            this.length = length;
+        }
+
+        @Override
+        public int compareTo(Neighbor that) {
+            if (length != that.length) {
+                return Integer.compare(length, that.length);
+            }
+            return noun.compareTo(that.noun);
+        }
     }
 
     // do unit testing of this class
     public static void main(String[] args) {
         StdOut.println("INPUT: " + args[0] + " " + args[1]);
         WordNet wordNet = new WordNet(args[0], args[1]);
+        if (args.length > 2) {
+            wordNet.save(args[2]);
+            wordNet = new WordNet(args[2]);
+        }
 //        StdOut.println(wordNet.sap("Montmartre", "Forbidden_City"));
 //        if (wordNet.isNoun("anamorphosis")) {
 //            StdOut.println("anamorphosis");
@@ -0,0 +1,198 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Single-pass parser for the synsets and hypernyms files.
+// Reads raw bytes through one reusable buffer and parses ids and commas by hand,
+// so the only objects created per line are the synset and noun strings themselves.
+// Synsets and nouns go into a DenseNounIndex and hypernym edges straight into
+// compressed sparse row form; the digraph gets one vertex per hypernyms line, or
+// more if an id in either file is larger.
+final class WordNetLoader {
+
+    private final DenseNounIndex index;
+    private final CompactDigraph digraph;
+
+    private final byte[] buffer = new byte[1 << 16];
+    private InputStream in;
+    private int position;
+    private int limit;
+    private int lastByte;
+    private byte[] field = new byte[256];
+
+    private String[] synsets = new String[1 << 12];
+    private int synsetCount;
+    private String[] pairNouns = new String[1 << 12];
+    private int[] pairIds = new int[1 << 12];
+    private int pairs;
+
+    private int[] from = new int[1 << 12];
+    private int[] to = new int[1 << 12];
+    private int edges;
+    private int vertices;
+
+    WordNetLoader(String synsetsFile, String hypernymsFile) {
+        try {
+            try (InputStream stream = new FileInputStream(synsetsFile)) {
+                open(stream);
+                readSynsets();
+            }
+            try (InputStream stream = new FileInputStream(hypernymsFile)) {
+                open(stream);
+                readHypernyms();
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("could not read " + synsetsFile + " / " + hypernymsFile, e);
+        }
+        index = new DenseNounIndex(Arrays.copyOf(synsets, synsetCount), pairNouns, pairIds, pairs);
+        digraph = buildDigraph();
+    }
+
+    DenseNounIndex index() {
+        return index;
+    }
+
+    CompactDigraph digraph() {
+        return digraph;
+    }
+
+    private void open(InputStream stream) {
+        in = stream;
+        position = 0;
+        limit = 0;
+    }
+
+    // next byte, or -1 at end of file
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    // parses a non-negative decimal id starting at c; the byte after the last digit
+    // is left in lastByte
+    private int readInt(int c) throws IOException {
+        if (c < '0' || c > '9') {
+            throw new IllegalArgumentException("expected a vertex id");
+        }
+        int value = 0;
+        while (c >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            c = read();
+        }
+        lastByte = c;
+        return value;
+    }
+
+    private int skipLine(int c) throws IOException {
+        while (c != '\n' && c != -1) {
+            c = read();
+        }
+        return c;
+    }
+
+    // id,synonym synonym ...,gloss
+    private void readSynsets() throws IOException {
+        int c = read();
+        while (c != -1) {
+            if (c == '\n' || c == '\r') {
+                c = read();
+                continue;
+            }
+            int id = readInt(c);
+            if (lastByte != ',') {
+                throw new IllegalArgumentException("malformed synset line " + id);
+            }
+            int length = 0;
+            c = read();
+            while (c != ',' && c != '\n' && c != '\r' && c != -1) {
+                if (length == field.length) {
+                    field = Arrays.copyOf(field, 2 * length);
+                }
+                field[length++] = (byte) c;
+                c = read();
+            }
+            String synset = new String(field, 0, length, StandardCharsets.UTF_8);
+            if (id >= synsets.length) {
+                synsets = Arrays.copyOf(synsets, Math.max(2 * synsets.length, id + 1));
+            }
+            synsets[id] = synset;
+            synsetCount = Math.max(synsetCount, id + 1);
+            int start = 0;
+            while (start < synset.length()) {
+                int end = synset.indexOf(' ', start);
+                if (end == -1) {
+                    end = synset.length();
+                }
+                if (end > start) {
+                    if (pairs == pairIds.length) {
+                        pairNouns = Arrays.copyOf(pairNouns, 2 * pairs);
+                        pairIds = Arrays.copyOf(pairIds, 2 * pairs);
+                    }
+                    pairNouns[pairs] = synset.substring(start, end);
+                    pairIds[pairs] = id;
+                    pairs++;
+                }
+                start = end + 1;
+            }
+            vertices = Math.max(vertices, id + 1);
+            c = skipLine(c);
+        }
+    }
+
+    // id,hypernym,hypernym,...
+    private void readHypernyms() throws IOException {
+        int lines = 0;
+        int c = read();
+        while (c != -1) {
+            if (c == '\n' || c == '\r') {
+                c = read();
+                continue;
+            }
+            lines++;
+            int v = readInt(c);
+            vertices = Math.max(vertices, v + 1);
+            c = lastByte;
+            while (c == ',') {
+                int w = readInt(read());
+                vertices = Math.max(vertices, w + 1);
+                if (edges == from.length) {
+                    from = Arrays.copyOf(from, 2 * edges);
+                    to = Arrays.copyOf(to, 2 * edges);
+                }
+                from[edges] = v;
+                to[edges] = w;
+                edges++;
+                c = lastByte;
+            }
+            c = skipLine(c);
+        }
+        vertices = Math.max(vertices, lines);
+    }
+
+    // successors are stored newest first, matching the iteration order of an algs4 Digraph
+    // built by adding the same edges in file order
+    private CompactDigraph buildDigraph() {
+        int[] offsets = new int[vertices + 1];
+        for (int i = 0; i < edges; ++i) {
+            offsets[from[i] + 1]++;
+        }
+        for (int v = 0; v < vertices; ++v) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] next = Arrays.copyOfRange(offsets, 1, vertices + 1);
+        int[] targets = new int[edges];
+        for (int i = 0; i < edges; ++i) {
+            targets[--next[from[i]]] = to[i];
+        }
+        return new CompactDigraph(offsets, targets);
+    }
+}
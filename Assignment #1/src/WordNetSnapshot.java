@@ -0,0 +1,242 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// Binary snapshot of a built WordNet, served straight from a read-only memory mapping.
+//
+// Layout (big-endian ints, then UTF-8 blobs):
+//   magic, version, V, E, S (synsets), N (nouns)
+//   int[V + 1] offsets, int[E] targets        compressed sparse row hypernym graph
+//   int[S + 1] synset start                    byte ranges in the synset blob
+//   int[N + 1] noun start                      byte ranges in the noun blob, nouns sorted by UTF-8 bytes
+//   int[N + 1] noun id start                   ranges in the noun id table
+//   int[...] noun ids                          synset ids of each noun
+//   synset blob, noun blob
+//
+// Only the graph arrays and the noun id table are copied to the heap when a snapshot is
+// opened; noun lookups binary-search the mapping and strings are decoded on demand, so
+// processes that open the same file share one page-cache copy of the dictionary.
+final class WordNetSnapshot implements NounIndex {
+
+    private static final int MAGIC = 0x574e5331;
+    private static final int VERSION = 1;
+    private static final int HEADER = 6 * Integer.BYTES;
+
+    private final ByteBuffer buffer;
+    private final CompactDigraph digraph;
+    private final int[] ids;
+    private final int synsetCount;
+    private final int nounCount;
+    private final int synsetStartPos;
+    private final int nounStartPos;
+    private final int nounIdStartPos;
+    private final int nounIdsPos;
+    private final int synsetBlobPos;
+    private final int nounBlobPos;
+
+    private WordNetSnapshot(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("not a WordNet snapshot");
+        }
+        int v = buffer.getInt(8);
+        int e = buffer.getInt(12);
+        synsetCount = buffer.getInt(16);
+        nounCount = buffer.getInt(20);
+        int offsetsPos = HEADER;
+        int targetsPos = offsetsPos + Integer.BYTES * (v + 1);
+        synsetStartPos = targetsPos + Integer.BYTES * e;
+        nounStartPos = synsetStartPos + Integer.BYTES * (synsetCount + 1);
+        nounIdStartPos = nounStartPos + Integer.BYTES * (nounCount + 1);
+        nounIdsPos = nounIdStartPos + Integer.BYTES * (nounCount + 1);
+        synsetBlobPos = nounIdsPos + Integer.BYTES * buffer.getInt(nounIdStartPos + Integer.BYTES * nounCount);
+        nounBlobPos = synsetBlobPos + buffer.getInt(synsetStartPos + Integer.BYTES * synsetCount);
+        if (nounBlobPos + buffer.getInt(nounStartPos + Integer.BYTES * nounCount) != buffer.capacity()) {
+            throw new IllegalArgumentException("truncated WordNet snapshot");
+        }
+        int[] offsets = new int[v + 1];
+        int[] targets = new int[e];
+        buffer.duplicate().position(offsetsPos).asIntBuffer().get(offsets);
+        buffer.duplicate().position(targetsPos).asIntBuffer().get(targets);
+        digraph = new CompactDigraph(offsets, targets);
+        ids = new int[buffer.getInt(nounIdStartPos + Integer.BYTES * nounCount)];
+        buffer.duplicate().position(nounIdsPos).asIntBuffer().get(ids);
+    }
+
+    // maps a snapshot file written by write()
+    static WordNetSnapshot open(String file) {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new WordNetSnapshot(mapped);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("could not map " + file, e);
+        }
+    }
+
+    static void write(String file, CompactDigraph digraph, NounIndex index) throws IOException {
+        List<byte[]> nouns = new ArrayList<>();
+        for (String noun : index.nouns()) {
+            nouns.add(noun.getBytes(StandardCharsets.UTF_8));
+        }
+        nouns.sort(Arrays::compareUnsigned);
+        int synsets = index.synsetCount();
+        byte[][] synsetBytes = new byte[synsets][];
+        for (int v = 0; v < synsets; ++v) {
+            String synset = index.synset(v);
+            synsetBytes[v] = synset == null ? new byte[0] : synset.getBytes(StandardCharsets.UTF_8);
+        }
+        int[] offsets = digraph.offsets();
+        int[] targets = digraph.targets();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(digraph.V());
+            out.writeInt(digraph.E());
+            out.writeInt(synsets);
+            out.writeInt(nouns.size());
+            for (int offset : offsets) {
+                out.writeInt(offset);
+            }
+            for (int target : targets) {
+                out.writeInt(target);
+            }
+            int start = 0;
+            out.writeInt(start);
+            for (byte[] synset : synsetBytes) {
+                start += synset.length;
+                out.writeInt(start);
+            }
+            start = 0;
+            out.writeInt(start);
+            for (byte[] noun : nouns) {
+                start += noun.length;
+                out.writeInt(start);
+            }
+            int[] ids = index.synsetIds();
+            int[] order = new int[nouns.size()];
+            start = 0;
+            out.writeInt(start);
+            for (int i = 0; i < order.length; ++i) {
+                order[i] = index.find(new String(nouns.get(i), StandardCharsets.UTF_8));
+                start += index.first(order[i] + 1) - index.first(order[i]);
+                out.writeInt(start);
+            }
+            for (int i : order) {
+                for (int j = index.first(i); j < index.first(i + 1); ++j) {
+                    out.writeInt(ids[j]);
+                }
+            }
+            for (byte[] synset : synsetBytes) {
+                out.write(synset);
+            }
+            for (byte[] noun : nouns) {
+                out.write(noun);
+            }
+        }
+    }
+
+    CompactDigraph digraph() {
+        return digraph;
+    }
+
+    private String decode(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = buffer.get(from + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int nounStart(int i) {
+        return buffer.getInt(nounStartPos + Integer.BYTES * i);
+    }
+
+    @Override
+    public int find(String noun) {
+        byte[] key = noun.getBytes(StandardCharsets.UTF_8);
+        int lo = 0, hi = nounCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int from = nounBlobPos + nounStart(mid);
+            int length = nounBlobPos + nounStart(mid + 1) - from;
+            int cmp = 0;
+            for (int i = 0; i < Math.min(length, key.length) && cmp == 0; ++i) {
+                cmp = Integer.compare(buffer.get(from + i) & 0xff, key[i] & 0xff);
+            }
+            if (cmp == 0) {
+                cmp = Integer.compare(length, key.length);
+            }
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int first(int i) {
+        return buffer.getInt(nounIdStartPos + Integer.BYTES * i);
+    }
+
+    @Override
+    public int[] synsetIds() {
+        return ids;
+    }
+
+    @Override
+    public int nounCount() {
+        return nounCount;
+    }
+
+    @Override
+    public Iterable<String> nouns() {
+        return () -> new Iterator<String>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < nounCount;
+            }
+
+            @Override
+            public String next() {
+                if (next == nounCount) {
+                    throw new NoSuchElementException();
+                }
+                int i = next++;
+                return decode(nounBlobPos + nounStart(i), nounBlobPos + nounStart(i + 1));
+            }
+        };
+    }
+
+    @Override
+    public String synset(int v) {
+        if (v < 0 || v >= synsetCount) {
+            return null;
+        }
+        int from = buffer.getInt(synsetStartPos + Integer.BYTES * v);
+        int to = buffer.getInt(synsetStartPos + Integer.BYTES * (v + 1));
+        return from == to ? null : decode(synsetBlobPos + from, synsetBlobPos + to);
+    }
+
+    @Override
+    public int synsetCount() {
+        return synsetCount;
+    }
+}
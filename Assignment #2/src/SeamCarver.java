@@ -1,66 +1,104 @@
 import edu.princeton.cs.algs4.Picture;
 import edu.princeton.cs.algs4.StdOut;
-import java.awt.Color;
 import java.io.File;
-import java.util.PriorityQueue;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class SeamCarver {
 
-    private class Coord {
-        public int x, y;
-        public Coord(int _x, int _y) {
-            x = _x;
-            y = _y;
-        }
+    // Pixels (packed 0xAARRGGBB, alpha always opaque as Picture.get reports it) and energies
+    // are stored in one of two orientations: [x][y] while horizontal seams are being removed
+    // and [y][x] (transposed) while vertical ones are. Either way a seam takes one pixel from
+    // each inner array, which System.arraycopy closes up in place, and a seam search reads
+    // whole inner arrays. Both matrices are transposed together, only when the seam direction
+    // changes. Inner arrays keep their length as seams are removed; width and height say how
+    // much of them is live.
+    private int[][] rgb;
+    private double[][] energy;
+    private boolean transposed;
+    private int width;
+    private int height;
+    // back-pointers of the last seam search, allocated by the first one and reused while the
+    // picture shrinks
+    private int[] edgeTo;
+    // smallest number of pixels worth handing to a fork/join worker
+    private final int threshold;
+
+    // a piece [lo, hi) of a loop whose iterations are independent
+    private interface Range {
+        void run(int lo, int hi);
     }
 
-    private class PQEntry implements Comparable<PQEntry> {
-        public double e;
-        public Coord curr, prev;
-        public PQEntry(double _e, Coord _curr, Coord _prev) {
-            e = _e;
-            curr = _curr;
-            prev = _prev;
-        }
+    // splits [lo, hi) in halves while both would keep at least grain iterations, and runs
+    // body on each piece
+    @SuppressWarnings("serial")
+    private static final class RangeTask extends RecursiveAction {
+        private final Range body;
+        private final int lo, hi, grain;
 
-        @Override
-        public int compareTo(PQEntry entry) {
-            return Double.compare(e, entry.e);
+        RangeTask(Range body, int lo, int hi, int grain) {
+            this.body = body;
+            this.lo = lo;
+            this.hi = hi;
+            this.grain = grain;
         }
-    }
 
-    private class DPEntry {
-        public double e;
-        public Coord prev;
-        public DPEntry(double _e, Coord _prev) {
-            e = _e;
-            prev = _prev;
+        @Override
+        protected void compute() {
+            if ((hi - lo) / 2 < grain) {
+                body.run(lo, hi);
+                return;
+            }
+            int mid = lo + (hi - lo) / 2;
+            invokeAll(new RangeTask(body, lo, mid, grain), new RangeTask(body, mid, hi, grain));
         }
     }
 
-    private Color[][] rgb;
-    private double[][] energy;
-    private boolean energyReady = false;
-
     // create a seam carver object based on the given picture
     public SeamCarver(Picture picture) {
-        if (picture == null) {
+        this(picture, Integer.MAX_VALUE);
+    }
+
+    // same as above, computing energies, transpositions and each stage of a seam search on the
+    // common fork/join pool in pieces of at least parallelThreshold pixels; anything smaller
+    // runs serially, so Integer.MAX_VALUE never forks. Results are identical either way,
+    // since every pixel is computed by the same arithmetic whichever thread does it
+    public SeamCarver(Picture picture, int parallelThreshold) {
+        if (picture == null || parallelThreshold < 1) {
             throw new IllegalArgumentException();
         }
+        threshold = parallelThreshold;
         int w = picture.width(), h = picture.height();
         if (w == 0 || h == 0) {
             throw new IllegalArgumentException();
         }
-        rgb = new Color[w][h];
+        rgb = new int[w][h];
         for (int c = 0; c < w; ++c) {
             for (int r = 0; r < h; ++r) {
-                rgb[c][r] = picture.get(c, r);
+                rgb[c][r] = picture.getRGB(c, r) | 0xff000000;
             }
         }
+        width = w;
+        height = h;
         energy = new double[w][h];
-        calculateEnergy();
-        energyReady = true;
+        forRange(0, w, Math.max(1, threshold / h), (lo, hi) -> {
+            for (int x = lo; x < hi; ++x) {
+                for (int y = 0; y < h; ++y) {
+                    energy[x][y] = computeEnergy(x, y);
+                }
+            }
+        });
+    }
+
+    // runs body over [lo, hi): serially unless it splits into at least two pieces of grain
+    // iterations, which then run on the common fork/join pool
+    private static void forRange(int lo, int hi, int grain, Range body) {
+        if ((hi - lo) / 2 < grain) {
+            body.run(lo, hi);
+        } else {
+            ForkJoinPool.commonPool().invoke(new RangeTask(body, lo, hi, grain));
+        }
     }
 
     // current picture
@@ -68,10 +106,14 @@ public class SeamCarver {
         if (width() == 0 || height() == 0) {
             return null;
         }
-        Picture current = new Picture(rgb.length, rgb[0].length);
-        for (int x = 0; x < rgb.length; ++x) {
-            for (int y = 0; y < rgb[0].length; ++y) {
-                current.set(x, y, rgb[x][y]);
+        Picture current = new Picture(width, height);
+        for (int i = 0; i < outer(); ++i) {
+            for (int j = 0; j < inner(); ++j) {
+                if (transposed) {
+                    current.setRGB(j, i, rgb[i][j]);
+                } else {
+                    current.setRGB(i, j, rgb[i][j]);
+                }
             }
         }
         return current;
@@ -79,15 +121,24 @@ public class SeamCarver {
 
     // width of current picture
     public int width() {
-        return this.rgb.length;
+        return width;
     }
 
     // height of current picture
     public int height() {
-        if (rgb.length == 0) {
+        if (width == 0) {
             return 0;
         }
-        return rgb[0].length;
+        return height;
+    }
+
+    // live lengths of the outer and the inner arrays
+    private int outer() {
+        return transposed ? height : width;
+    }
+
+    private int inner() {
+        return transposed ? width : height;
     }
 
     // energy of pixel at column x and row y
@@ -95,31 +146,47 @@ public class SeamCarver {
         if (x < 0 || x >= width() || y < 0 || y >= height()) {
             throw new IllegalArgumentException();
         }
-        if (energy != null && energyReady) {
-            return energy[x][y];
-        }
-        if (x == 0 || x == width()-1 || y == 0 || y == height()-1) {
+        return transposed ? energy[y][x] : energy[x][y];
+    }
+
+    // energy of the pixel at rgb[i][j]. The energy formula is symmetric in x and y, so it
+    // reads the same in either orientation
+    private double computeEnergy(int i, int j) {
+        if (i == 0 || i == outer()-1 || j == 0 || j == inner()-1) {
             return 1000;
         }
-        int deltaXRed = rgb[x+1][y].getRed() - rgb[x-1][y].getRed();
-        int deltaXGreen = rgb[x+1][y].getGreen() - rgb[x-1][y].getGreen();
-        int deltaXBlue =  rgb[x+1][y].getBlue() - rgb[x-1][y].getBlue();
-        int deltaX = deltaXRed * deltaXRed + deltaXGreen * deltaXGreen + deltaXBlue * deltaXBlue;
-        int deltaYRed = rgb[x][y+1].getRed() - rgb[x][y-1].getRed();
-        int deltaYGreen = rgb[x][y+1].getGreen() - rgb[x][y-1].getGreen();
-        int deltaYBlue = rgb[x][y+1].getBlue() - rgb[x][y-1].getBlue();
-        int deltaY = deltaYRed * deltaYRed + deltaYGreen * deltaYGreen + deltaYBlue * deltaYBlue;
-        return Math.sqrt(deltaX + deltaY);
+        return Math.sqrt(gradient(rgb[i+1][j], rgb[i-1][j]) + gradient(rgb[i][j+1], rgb[i][j-1]));
     }
 
-    private void calculateEnergy() {
-        energy = new double[width()][height()];
-        for (int x = 0; x < width(); ++x) {
-            for (int y = 0; y < height(); ++y) {
-                energy[x][y] = energy(x, y);
-            }
+    // squared difference of two packed pixels, summed over red, green and blue
+    private static int gradient(int a, int b) {
+        int red = (a >> 16 & 0xff) - (b >> 16 & 0xff);
+        int green = (a >> 8 & 0xff) - (b >> 8 & 0xff);
+        int blue = (a & 0xff) - (b & 0xff);
+        return red * red + green * green + blue * blue;
+    }
+
+    // switches both matrices to [y][x] if vertical, otherwise to [x][y]
+    private void orient(boolean vertical) {
+        if (transposed == vertical) {
+            return;
         }
-        energyReady = true;
+        int n = outer(), m = inner();
+        int[][] pixels = new int[m][n];
+        double[][] energies = new double[m][n];
+        forRange(0, m, Math.max(1, threshold / n), (lo, hi) -> {
+            for (int j = lo; j < hi; ++j) {
+                int[] pixelRow = pixels[j];
+                double[] energyRow = energies[j];
+                for (int i = 0; i < n; ++i) {
+                    pixelRow[i] = rgb[i][j];
+                    energyRow[i] = energy[i][j];
+                }
+            }
+        });
+        rgb = pixels;
+        energy = energies;
+        transposed = vertical;
     }
 
     // sequence of indices for horizontal seam
@@ -127,64 +194,8 @@ public class SeamCarver {
         if (height() <= 2 || width() <= 2) {
             return new int[width()];
         }
-        if (energy == null || !energyReady) {
-            calculateEnergy();
-        }
-        DPEntry[][] dp = new DPEntry[width()][height()];
-        for (DPEntry[] row : dp) {
-            for (int i = 0; i < row.length; ++i) {
-                row[i] = new DPEntry(Double.MAX_VALUE, null);
-            }
-        }
-        PriorityQueue<PQEntry> pq = new PriorityQueue<>();
-        for (int y = 1; y < height()-1; ++y) {
-            pq.add(new PQEntry(energy(0, y) + energy(1, y), new Coord(1, y), new Coord(0, y)));
-        }
-        while (!pq.isEmpty()) {
-            PQEntry pqEntry = pq.poll();
-            if (dp[pqEntry.curr.x][pqEntry.curr.y].e > pqEntry.e) {
-                dp[pqEntry.curr.x][pqEntry.curr.y].e = pqEntry.e;
-                dp[pqEntry.curr.x][pqEntry.curr.y].prev = pqEntry.prev;
-            } else {
-                continue;
-            }
-            if (pqEntry.curr.x == width()-1) {
-                continue;
-            }
-            if (pqEntry.curr.y > 1) {
-                pq.add(new PQEntry(
-                        energy(pqEntry.curr.x + 1, pqEntry.curr.y - 1) + pqEntry.e,
-                        new Coord(pqEntry.curr.x + 1, pqEntry.curr.y - 1),
-                        pqEntry.curr
-                ));
-            }
-            pq.add(new PQEntry(
-                    energy(pqEntry.curr.x + 1, pqEntry.curr.y) + pqEntry.e,
-                    new Coord(pqEntry.curr.x + 1, pqEntry.curr.y),
-                    pqEntry.curr
-            ));
-            if (pqEntry.curr.y < height()-2) {
-                pq.add(new PQEntry(
-                        energy(pqEntry.curr.x + 1, pqEntry.curr.y + 1) + pqEntry.e,
-                        new Coord(pqEntry.curr.x + 1, pqEntry.curr.y + 1),
-                        pqEntry.curr
-                ));
-            }
-        }
-        double minEnergy = Double.MAX_VALUE;
-        int x = width() - 1, y = 1;
-        for (int _y = 1; _y < height()-1; ++_y) {
-            if (dp[x][_y].e < minEnergy) {
-                minEnergy = dp[x][_y].e;
-                y = _y;
-            }
-        }
-        int[] res = new int[width()];
-        res[x] = y;
-        for (int col = x; col > 0; col--) {
-            res[col-1] = dp[col][res[col]].prev.y;
-        }
-        return res;
+        orient(false);
+        return findSeam();
     }
 
     // sequence of indices for vertical seam
@@ -192,126 +203,141 @@ public class SeamCarver {
         if (width() <= 2 || height() <= 2) {
             return new int[height()];
         }
-        if (energy == null || !energyReady) {
-            calculateEnergy();
-        }
-        DPEntry[][] dp = new DPEntry[width()][height()];
-        for (DPEntry[] row : dp) {
-            for (int i = 0; i < row.length; ++i) {
-                row[i] = new DPEntry(Double.MAX_VALUE, null);
+        orient(true);
+        return findSeam();
+    }
+
+    // Minimum-energy seam through the current orientation: one pixel from each of the outer()
+    // stages (rows of a vertical seam, columns of a horizontal one) at an inner position
+    // 1 .. inner()-2 that moves by at most one from stage to stage; the first two stages
+    // share a position. The pixels form a DAG in stage order, so one relaxation pass per
+    // stage over two rows of path energies finds the seam, with a back-pointer per pixel to
+    // trace it. Path energies are summed in the same order as a shortest-path search would,
+    // and ties go to the smallest position, both between predecessors and among the seam's
+    // last pixels. Positions within a stage are independent, so wide stages are split
+    // between fork/join workers.
+    private int[] findSeam() {
+        int stages = outer(), positions = inner();
+        if (edgeTo == null) {
+            edgeTo = new int[stages * positions];
+        }
+        double[] previous = new double[positions];
+        double[] current = new double[positions];
+        for (int p = 1; p < positions - 1; ++p) {
+            current[p] = energy[1][p] + energy[0][p];
+            edgeTo[positions + p] = p;
+        }
+        for (int s = 2; s < stages; ++s) {
+            double[] swap = previous;
+            previous = current;
+            current = swap;
+            int stage = s;
+            double[] from = previous, to = current;
+            forRange(1, positions - 1, threshold, (lo, hi) -> relax(stage, positions, from, to, lo, hi));
+        }
+        int[] seam = new int[stages];
+        int last = 1;
+        for (int p = 2; p < positions - 1; ++p) {
+            if (current[p] < current[last]) {
+                last = p;
             }
         }
-        PriorityQueue<PQEntry> pq = new PriorityQueue<>();
-        for (int x = 1; x < width()-1; ++x) {
-            pq.add(new PQEntry(energy(x, 0) + energy(x, 1), new Coord(x, 1), new Coord(x, 0)));
+        seam[stages - 1] = last;
+        for (int s = stages - 1; s > 0; --s) {
+            seam[s - 1] = edgeTo[s * positions + seam[s]];
         }
-        while (!pq.isEmpty()) {
-            PQEntry pqEntry = pq.poll();
-            if (dp[pqEntry.curr.x][pqEntry.curr.y].e > pqEntry.e) {
-                dp[pqEntry.curr.x][pqEntry.curr.y].e = pqEntry.e;
-                dp[pqEntry.curr.x][pqEntry.curr.y].prev = pqEntry.prev;
-            } else {
-                continue;
-            }
-            if (pqEntry.curr.y == height()-1) {
-                continue;
-            }
-            if (pqEntry.curr.x > 1) {
-                pq.add(new PQEntry(
-                        energy(pqEntry.curr.x - 1, pqEntry.curr.y + 1) + pqEntry.e,
-                        new Coord(pqEntry.curr.x - 1, pqEntry.curr.y + 1),
-                        pqEntry.curr
-                ));
-            }
-            pq.add(new PQEntry(
-                    energy(pqEntry.curr.x, pqEntry.curr.y + 1) + pqEntry.e,
-                    new Coord(pqEntry.curr.x, pqEntry.curr.y + 1),
-                    pqEntry.curr
-            ));
-            if (pqEntry.curr.x < width()-2) {
-                pq.add(new PQEntry(
-                        energy(pqEntry.curr.x + 1, pqEntry.curr.y + 1) + pqEntry.e,
-                        new Coord(pqEntry.curr.x + 1, pqEntry.curr.y + 1),
-                        pqEntry.curr
-                ));
+        return seam;
+    }
+
+    // path energies of stage s at positions [lo, hi) from those of stage s - 1 in previous
+    private void relax(int s, int positions, double[] previous, double[] current, int lo, int hi) {
+        double[] cost = energy[s];
+        int base = s * positions;
+        for (int p = lo; p < hi; ++p) {
+            int from = p;
+            if (p > 1 && previous[p - 1] <= previous[p]) {
+                from = p - 1;
             }
-        }
-        double minEnergy = Double.MAX_VALUE;
-        int x = 1, y = height() - 1;
-        for (int _x = 1; _x < width()-1; ++_x) {
-            if (dp[_x][y].e < minEnergy) {
-                minEnergy = dp[_x][y].e;
-                x = _x;
+            if (p < positions - 2 && previous[p + 1] < previous[from]) {
+                from = p + 1;
             }
+            current[p] = cost[p] + previous[from];
+            edgeTo[base + p] = from;
         }
-        int[] res = new int[height()];
-        res[y] = x;
-        for (int row = y; row > 0; row--) {
-            res[row-1] = dp[res[row]][row].prev.x;
-        }
-        return res;
     }
 
     // remove horizontal seam from current picture
     public void removeHorizontalSeam(int[] seam) {
-        if (seam == null || rgb.length == 0 || rgb[0].length == 0 || seam.length != width()) {
+        if (seam == null || width() == 0 || height() == 0 || seam.length != width()) {
             throw new IllegalArgumentException();
         }
-        int prev = seam[0];
-        for (int a : seam) {
-            if (a < 0 || a >= height() || Math.abs(prev - a) > 1) {
-                throw new IllegalArgumentException();
-            }
-            prev = a;
-        }
-        if (rgb[0].length == 1) {
-            rgb = new Color[width()][0];
+        validateSeam(seam, height());
+        if (height == 1) {
+            height = 0;
             return;
         }
-        Color[][] result = new Color[width()][height()-1];
-        for (int x = 0; x < seam.length; ++x) {
-            System.arraycopy(rgb[x], 0, result[x], 0, seam[x]);
-            System.arraycopy(rgb[x], seam[x] + 1, result[x], seam[x], height() - seam[x] - 1);
-        }
-        rgb = result;
-        energy = null;
-        energyReady = false;
+        orient(false);
+        removeSeam(seam);
+        height--;
+        updateEnergy(seam);
     }
 
     // remove vertical seam from current picture
     public void removeVerticalSeam(int[] seam) {
-        if (seam == null || rgb.length == 0 || rgb[0].length == 0 || seam.length != height()) {
+        if (seam == null || width() == 0 || height() == 0 || seam.length != height()) {
             throw new IllegalArgumentException();
         }
+        validateSeam(seam, width());
+        if (width == 1) {
+            width = 0;
+            return;
+        }
+        orient(true);
+        removeSeam(seam);
+        width--;
+        updateEnergy(seam);
+    }
+
+    private static void validateSeam(int[] seam, int positions) {
         int prev = seam[0];
         for (int a : seam) {
-            if (a < 0 || a >= width() || Math.abs(prev - a) > 1) {
+            if (a < 0 || a >= positions || Math.abs(prev - a) > 1) {
                 throw new IllegalArgumentException();
             }
             prev = a;
         }
-        if (rgb.length == 1) {
-            rgb = new Color[0][height()];
-            return;
+    }
+
+    // closes up seam[s] in each inner array of both matrices, which must already be oriented
+    // along the seam
+    private void removeSeam(int[] seam) {
+        int tail = inner() - 1;
+        for (int s = 0; s < seam.length; ++s) {
+            System.arraycopy(rgb[s], seam[s] + 1, rgb[s], seam[s], tail - seam[s]);
+            System.arraycopy(energy[s], seam[s] + 1, energy[s], seam[s], tail - seam[s]);
         }
-        Color[][] result = new Color[width()-1][height()];
-        for (int y = 0; y < height(); ++y) {
-            boolean removed = false;
-            for (int x = 0; x < width(); ++x) {
-                if (seam[y] == x) {
-                    removed = true;
-                    continue;
-                }
-                if (removed) {
-                    result[x-1][y] = rgb[x][y];
-                } else {
-                    result[x][y] = rgb[x][y];
-                }
+    }
+
+    // After a seam is removed and the energies shifted with the pixels, only pixels whose
+    // neighbours or border status changed need recomputing: at each stage of the seam, the
+    // positions from one before the smallest to the largest of the seam's index there and
+    // at the two adjacent stages. Every other energy is what a full recomputation would give.
+    private void updateEnergy(int[] seam) {
+        int positions = inner();
+        for (int s = 0; s < seam.length; ++s) {
+            int lo = seam[s], hi = seam[s];
+            if (s > 0) {
+                lo = Math.min(lo, seam[s-1]);
+                hi = Math.max(hi, seam[s-1]);
+            }
+            if (s < seam.length-1) {
+                lo = Math.min(lo, seam[s+1]);
+                hi = Math.max(hi, seam[s+1]);
+            }
+            for (int p = Math.max(0, lo-1); p <= Math.min(positions-1, hi); ++p) {
+                energy[s][p] = computeEnergy(s, p);
             }
         }
-        rgb = result;
-        energy = null;
-        energyReady = false;
     }
 
     //  unit testing (optional)